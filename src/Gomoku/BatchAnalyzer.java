@@ -0,0 +1,267 @@
+/**
+ * @author 潘学海
+ */
+
+package Gomoku;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+class BatchAnalyzer {
+    private final int threadNumber;
+    private final long budgetMillis;
+    private final Rule rule;
+    private final PositionCache cache;
+    private final ThreadLocal<MonteCarloTreeSearch> engines;
+    private final AtomicInteger analyzedNumber;
+    private final AtomicReference<Error> failure;
+    private BufferedWriter writer;
+    
+    
+    public BatchAnalyzer(int threadNumber, int searchThreadNumber, long budgetMillis, Rule rule, PositionCache cache) {
+        if (cache != null && cache.getRule() != rule)
+            throw new IllegalArgumentException("position cache was built for rule " + cache.getRule());
+        this.threadNumber = threadNumber;
+        this.budgetMillis = budgetMillis;
+        this.rule = rule;
+        this.cache = cache;
+        long maxNodes = Math.max(1, MonteCarloTreeSearch.getDefaultMaxNodes() / threadNumber);
+        engines = ThreadLocal.withInitial(() -> new MonteCarloTreeSearch(searchThreadNumber, rule, maxNodes));
+        analyzedNumber = new AtomicInteger();
+        failure = new AtomicReference<Error>();
+    }
+    
+    
+    public int analyze(List<File> inputs, File output) throws IOException, InterruptedException {
+        Set<String> finished = readFinished(output);
+        List<File> positions = new ArrayList<File>();
+        for (File input : inputs)
+            positions.addAll(listPositions(input));
+        writer = Files.newBufferedWriter(output.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        ExecutorService executor = Executors.newFixedThreadPool(threadNumber);
+        try {
+            for (File position : positions) {
+                String key = position.getCanonicalPath();
+                if (finished.add(key))
+                    executor.execute(() -> analyzePosition(key, position));
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+        finally {
+            executor.shutdownNow();
+            synchronized (this) {
+                writer.close();
+            }
+        }
+        if (failure.get() != null)
+            throw failure.get();
+        return analyzedNumber.get();
+    }
+    
+    
+    private void analyzePosition(String key, File position) {
+        if (failure.get() != null)
+            return;
+        String line;
+        try {
+            Board board = new Board();
+            board.setRule(rule);
+            board.loadGame(position);
+            CacheEntry entry = (cache != null ? cache.get(board.getHash(), budgetMillis) : null);
+            if (entry != null)
+                line = key + "\t" + format(entry);
+            else {
+                MonteCarloTreeSearch engine = engines.get();
+                SearchResult result;
+                try {
+                    result = engine.search(board, budgetMillis);
+                }
+                finally {
+                    engine.clear();
+                }
+                if (cache != null && result.hasBestMove()) {
+                    cache.put(board.getHash(),
+                              (result.isProven() ? CacheEntry.EXACT : CacheEntry.ESTIMATE),
+                              (float) result.getWinRate(),
+                              (int) Math.min(Integer.MAX_VALUE, result.getPlayouts()),
+                              budgetMillis,
+                              result.getBestMove());
+                }
+                line = key + "\t" + format(result);
+            }
+        }
+        catch (IOException | BadInputStoneException e) {
+            line = key + "\tERROR\t" + e.getClass().getSimpleName();
+        }
+        catch (RuntimeException e) {
+            line = key + "\tERROR\t" + e;
+        }
+        catch (Error e) {
+            failure.compareAndSet(null, e);
+            engines.remove();
+            return;
+        }
+        write(line);
+        analyzedNumber.incrementAndGet();
+    }
+    
+    
+    private synchronized void write(String line) {
+        try {
+            writer.write(line);
+            writer.newLine();
+            writer.flush();
+        }
+        catch (IOException e) {
+            System.err.println("failed to write result: " + e.getMessage());
+        }
+    }
+    
+    
+    private static String format(SearchResult result) {
+        if (!result.hasBestMove())
+            return "-\t-\t0\t";
+        StringBuilder variation = new StringBuilder();
+        for (int move : result.getPrincipalVariation()) {
+            if (variation.length() > 0)
+                variation.append(' ');
+            variation.append(FastBoard.getI(move)).append(',').append(FastBoard.getJ(move));
+        }
+        return String.format(Locale.ROOT, "%d,%d\t%.4f\t%d\t%s",
+                             result.getBestI(),
+                             result.getBestJ(),
+                             result.getWinRate(),
+                             result.getPlayouts(),
+                             variation);
+    }
+    
+    
+    private static String format(CacheEntry entry) {
+        int i = FastBoard.getI(entry.getBestMove()), j = FastBoard.getJ(entry.getBestMove());
+        return String.format(Locale.ROOT, "%d,%d\t%.4f\t%d\t%d,%d", i, j, entry.getScore(), entry.getEffort(), i, j);
+    }
+    
+    
+    private static Set<String> readFinished(File output) throws IOException {
+        Set<String> finished = new HashSet<String>();
+        if (!output.exists())
+            return finished;
+        try (RandomAccessFile file = new RandomAccessFile(output, "rw")) {
+            long length = file.length();
+            long end = length;
+            while (end > 0) {
+                file.seek(end - 1);
+                if (file.read() == '\n')
+                    break;
+                --end;
+            }
+            if (end < length)
+                file.setLength(end);
+        }
+        try (BufferedReader reader = Files.newBufferedReader(output.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                if (tab > 0)
+                    finished.add(line.substring(0, tab));
+            }
+        }
+        return finished;
+    }
+    
+    
+    static List<File> listPositions(File input) throws IOException {
+        if (!input.isDirectory())
+            return List.of(input);
+        try (Stream<Path> paths = Files.walk(input.toPath())) {
+            return paths.filter(Files::isRegularFile).sorted().map(Path::toFile).collect(Collectors.toList());
+        }
+    }
+    
+    
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int threadNumber = Runtime.getRuntime().availableProcessors();
+        int searchThreadNumber = 1;
+        long budgetMillis = 1000;
+        Rule rule = Rule.STANDARD;
+        File output = new File("analysis.tsv");
+        File cacheFile = null;
+        long cacheSize = 64L << 20;
+        EvictionPolicy evictionPolicy = EvictionPolicy.LEAST_EFFORT_FIRST;
+        List<File> inputs = new ArrayList<File>();
+        for (int k = 0; k < args.length; ++k) {
+            switch (args[k]) {
+                case "-threads":
+                    threadNumber = Integer.parseInt(args[++k]);
+                    break;
+                case "-search-threads":
+                    searchThreadNumber = Integer.parseInt(args[++k]);
+                    break;
+                case "-budget":
+                    budgetMillis = Long.parseLong(args[++k]);
+                    break;
+                case "-rule":
+                    rule = Rule.valueOf(args[++k].toUpperCase());
+                    break;
+                case "-output":
+                    output = new File(args[++k]);
+                    break;
+                case "-cache":
+                    cacheFile = new File(args[++k]);
+                    break;
+                case "-cache-size":
+                    cacheSize = Long.parseLong(args[++k]) << 20;
+                    break;
+                case "-eviction":
+                    evictionPolicy = (args[++k].equalsIgnoreCase("oldest") ? EvictionPolicy.OLDEST_FIRST : EvictionPolicy.LEAST_EFFORT_FIRST);
+                    break;
+                default:
+                    inputs.add(new File(args[k]));
+            }
+        }
+        if (inputs.isEmpty()) {
+            System.err.println("usage: BatchAnalyzer [-threads N] [-search-threads N] [-budget ms] [-rule freestyle|standard|renju] [-output file] [-cache file] [-cache-size MB] [-eviction oldest|least-effort] position...");
+            System.exit(1);
+        }
+        long startTime = System.nanoTime();
+        PositionCache cache = null;
+        try {
+            if (cacheFile != null)
+                cache = new PositionCache(cacheFile, cacheSize, evictionPolicy, rule);
+        }
+        catch (IOException e) {
+            System.err.println("cannot open position cache: " + e.getMessage());
+            System.exit(1);
+        }
+        int analyzedNumber;
+        try {
+            analyzedNumber = new BatchAnalyzer(threadNumber, searchThreadNumber, budgetMillis, rule, cache).analyze(inputs, output);
+        }
+        finally {
+            if (cache != null)
+                cache.close();
+        }
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        System.err.printf(Locale.ROOT, "analyzed %d positions in %.1f s (%.2f positions/s)%n", analyzedNumber, seconds, analyzedNumber / seconds);
+    }
+}
\ No newline at end of file
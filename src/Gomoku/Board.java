@@ -4,9 +4,6 @@
 
 package Gomoku;
 
-import java.awt.Point;
-import java.beans.PropertyChangeListener;
-import java.beans.PropertyChangeSupport;
 import java.io.IOException;
 import java.io.File;
 import java.io.FileInputStream;
@@ -16,7 +13,9 @@ import java.io.DataOutputStream;
 import java.util.ArrayList;
 import java.util.EmptyStackException;
 import java.util.List;
+import java.util.Objects;
 import java.util.Stack;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 enum StoneType {
     SPACE, BLACK, WHITE
@@ -24,25 +23,27 @@ enum StoneType {
 
 
 class Stone {
-    private final Point point;
+    private final int i;
+    private final int j;
     private final StoneType type;
     
     
     Stone(int i, int j, StoneType type) throws StoneOutOfBoardRangeException {
         if (i < 1 || i > Board.n || j < 1 || j > Board.n)
             throw new StoneOutOfBoardRangeException();
-        this.point = new Point(i, j);
+        this.i = i;
+        this.j = j;
         this.type = type;
     }
     
     
     public int getI() {
-        return point.x;
+        return i;
     }
     
     
     public int getJ() {
-        return point.y;
+        return j;
     }
     
     
@@ -58,13 +59,13 @@ class Stone {
         if (!(o instanceof Stone))
             return false;
         Stone stone = (Stone) o;
-        return point.equals(stone.point);
+        return i == stone.i && j == stone.j;
     }
     
     
     @Override
     public int hashCode() {
-        return point.hashCode();
+        return 31 * i + j;
     }
     
     
@@ -85,9 +86,13 @@ class Board {
     private final List<Integer> indexOfRowStones;
     private final StoneType[][] board;
     private final Stack<Stone> history;
+    private final SnapshotSupport snapshotSupport;
+    private JournalSession journal;
     private StoneType player1StoneType;
+    private Rule rule;
     private int presetStoneNumber;
     private boolean rowStonesUpdated;
+    private long hash;
     
     public static final int n = 15;
     private static final int[] dI = {1, 1, 0, -1};
@@ -96,13 +101,17 @@ class Board {
     
     public Board() {
         history = new Stack<Stone>();
+        snapshotSupport = new SnapshotSupport();
         board = new StoneType[n + 2][n + 2];
-        gameStartedChangeSupport = new DataChangeSupport<Boolean>(this, "gameStarted", false);
-        historySizeChangeSupport = new DataChangeSupport<Integer>(this, "historySize", 0);
+        gameStartedChangeSupport = new DataChangeSupport<Boolean>(false);
+        historySizeChangeSupport = new DataChangeSupport<Integer>(0);
         player1StoneType = StoneType.SPACE;
+        rule = Rule.STANDARD;
         presetStoneNumber = 5;
         rowStonesUpdated = false;
         indexOfRowStones = new ArrayList<Integer>();
+        journal = null;
+        gameStartedChangeSupport.addListener((oldValue, newValue) -> journalState());
         reset();
     }
     
@@ -120,18 +129,24 @@ class Board {
         rowStonesUpdated = false;
         indexOfRowStones.clear();
         history.clear();
-        historySizeChangeSupport.setValue(0);
+        hash = 0;
         for (int i = 0; i < n + 2; ++i) {
             for (int j = 0; j < n + 2; ++j)
                 board[i][j] = StoneType.SPACE;
         }
+        snapshotSupport.clear();
+        snapshotSupport.publish(hash);
+        historySizeChangeSupport.setValue(0);
+        if (journal != null) {
+            journal.clear();
+            journalState();
+        }
     }
     
     
     public void loadGame(File file) throws IOException, BadInputStoneException {
         reset();
-        try {
-            DataInputStream inputStream = new DataInputStream(new FileInputStream(file));
+        try (DataInputStream inputStream = new DataInputStream(new FileInputStream(file))) {
             gameStartedChangeSupport.setValue(inputStream.readBoolean());
             int c = inputStream.readInt();
             switch (c) {
@@ -155,10 +170,18 @@ class Board {
                         board[i][j] = type;
                     else
                         throw new StoneAlreadyPlacedException();
+                    hash ^= FastBoard.zobrist(type, i, j);
+                    snapshotSupport.push(i, j, type);
                 }
             }
             catch (IOException ignored) {
             }
+            snapshotSupport.publish(hash);
+            if (journal != null) {
+                for (Stone stone : history)
+                    journal.put(stone.getI(), stone.getJ());
+                journalState();
+            }
             historySizeChangeSupport.setValue(history.size());
         }
         catch (BadInputStoneException e) {
@@ -168,6 +191,20 @@ class Board {
     }
     
     
+    void restore(boolean started, StoneType player1StoneType, int presetStoneNumber, List<int[]> moves) throws BadInputStoneException {
+        reset();
+        for (int[] move : moves) {
+            Stone stone = new Stone(move[0], move[1], getNextStoneType());
+            if (board[stone.getI()][stone.getJ()] != StoneType.SPACE)
+                throw new StoneAlreadyPlacedException();
+            pushStone(stone);
+        }
+        this.player1StoneType = player1StoneType;
+        this.presetStoneNumber = presetStoneNumber;
+        gameStartedChangeSupport.setValue(started);
+    }
+    
+    
     public void saveGame(File file) throws IOException {
         DataOutputStream outputStream = new DataOutputStream(new FileOutputStream(file));
         outputStream.writeBoolean(gameStartedChangeSupport.getValue());
@@ -190,14 +227,26 @@ class Board {
     }
     
     
-    public void putStone(int i, int j) throws GameNotStartedException, StoneOutOfBoardRangeException, StoneAlreadyPlacedException {
+    public void putStone(int i, int j) throws GameNotStartedException, StoneOutOfBoardRangeException, StoneAlreadyPlacedException, ForbiddenMoveException {
         if (!isGameStarted())
             throw new GameNotStartedException();
         Stone lastStone = new Stone(i, j, getNextStoneType());
         if (board[i][j] != StoneType.SPACE)
             throw new StoneAlreadyPlacedException();
-        board[i][j] = lastStone.getType();
-        history.push(lastStone);
+        if (rule == Rule.RENJU && rule.isForbidden(new FastBoard(this), FastBoard.indexOf(i, j)))
+            throw new ForbiddenMoveException();
+        pushStone(lastStone);
+    }
+    
+    
+    void pushStone(Stone stone) {
+        board[stone.getI()][stone.getJ()] = stone.getType();
+        history.push(stone);
+        hash ^= FastBoard.zobrist(stone.getType(), stone.getI(), stone.getJ());
+        snapshotSupport.push(stone.getI(), stone.getJ(), stone.getType());
+        snapshotSupport.publish(hash);
+        if (journal != null)
+            journal.put(stone.getI(), stone.getJ());
         rowStonesUpdated = false;
         if (history.size() == n * n)
             gameStartedChangeSupport.setValue(false);
@@ -210,14 +259,30 @@ class Board {
             throw new GameNotStartedException();
         if (!canRetractStone())
             throw new EmptyStackException();
+        return popStone();
+    }
+    
+    
+    Stone popStone() throws EmptyStackException {
         Stone lastStone = history.pop();
         board[lastStone.getI()][lastStone.getJ()] = StoneType.SPACE;
+        hash ^= FastBoard.zobrist(lastStone.getType(), lastStone.getI(), lastStone.getJ());
+        snapshotSupport.pop();
+        snapshotSupport.publish(hash);
+        if (journal != null)
+            journal.retract();
         rowStonesUpdated = false;
         historySizeChangeSupport.setValue(history.size());
         return lastStone;
     }
     
     
+    void refreshGameState() {
+        rowStonesUpdated = false;
+        gameStartedChangeSupport.setValue(history.size() < n * n && !rule.isLastMoveWin(new FastBoard(this)));
+    }
+    
+    
     public boolean canRetractStone() {
         if (isGameStarted())
             return (history.size() > presetStoneNumber);
@@ -233,24 +298,24 @@ class Board {
                 Stone lastStone = history.peek();
                 int i = lastStone.getI(), j = lastStone.getJ();
                 StoneType type = lastStone.getType();
-                List<Point> pointList = new ArrayList<Point>();
+                List<int[]> pointList = new ArrayList<int[]>();
                 for (int direction = 0; direction < 4; ++direction) {
                     int forward = 0, backward = 0;
                     while (board[i + (forward + 1) * dI[direction]][j + (forward + 1) * dJ[direction]] == type)
                         ++forward;
                     while (board[i + (backward - 1) * dI[direction]][j + (backward - 1) * dJ[direction]] == type)
                         --backward;
-                    if (forward - backward + 1 == 5) {
+                    if (rule.isWinningLength(forward - backward + 1, type)) {
                         gameStartedChangeSupport.setValue(false);
                         for (int k = backward; k <= forward; ++k)
-                            pointList.add(new Point(i + k * dI[direction], j + k * dJ[direction]));
+                            pointList.add(new int[]{i + k * dI[direction], j + k * dJ[direction]});
                     }
                 }
                 if (!pointList.isEmpty()) {
                     pointList.forEach(point -> {
                         try {
-                            int index = history.indexOf(Stone.blackStoneAt(point.x, point.y));
-                            if (index > 0)
+                            int index = history.indexOf(Stone.blackStoneAt(point[0], point[1]));
+                            if (index >= 0)
                                 indexOfRowStones.add(index);
                         }
                         catch (StoneOutOfBoardRangeException ignored) {
@@ -268,6 +333,17 @@ class Board {
     }
     
     
+    public Rule getRule() {
+        return rule;
+    }
+    
+    
+    public void setRule(Rule rule) {
+        this.rule = rule;
+        rowStonesUpdated = false;
+    }
+    
+    
     public boolean isGameStarted() {
         return gameStartedChangeSupport.getValue();
     }
@@ -278,6 +354,11 @@ class Board {
     }
     
     
+    public int getPresetStoneNumber() {
+        return presetStoneNumber;
+    }
+    
+    
     public boolean isPlayerColorChosen() {
         return (player1StoneType != StoneType.SPACE);
     }
@@ -287,6 +368,24 @@ class Board {
         assert (!isPlayerColorChosen() && player1StoneType != StoneType.SPACE);
         this.player1StoneType = player1StoneType;
         presetStoneNumber = history.size();
+        journalState();
+    }
+    
+    
+    public void setJournal(JournalSession journal) {
+        this.journal = journal;
+        if (journal != null) {
+            journal.clear();
+            for (Stone stone : history)
+                journal.put(stone.getI(), stone.getJ());
+            journalState();
+        }
+    }
+    
+    
+    private void journalState() {
+        if (journal != null)
+            journal.state(isGameStarted(), player1StoneType, presetStoneNumber);
     }
     
     
@@ -295,6 +394,16 @@ class Board {
     }
     
     
+    public long getHash() {
+        return hash;
+    }
+    
+    
+    public BoardSnapshot snapshot() {
+        return snapshotSupport.getLatest();
+    }
+    
+    
     public int getHistorySize() {
         return history.size();
     }
@@ -328,29 +437,43 @@ class Board {
     }
     
     
-    public void addGameStartedChangeListener(PropertyChangeListener listener) {
-        gameStartedChangeSupport.addPropertyChangeListener(listener);
+    public void addGameStartedChangeListener(DataChangeListener<Boolean> listener) {
+        gameStartedChangeSupport.addListener(listener);
     }
     
     
-    public void addHistorySizeChangeListener(PropertyChangeListener listener) {
-        historySizeChangeSupport.addPropertyChangeListener(listener);
+    public void addHistorySizeChangeListener(DataChangeListener<Integer> listener) {
+        historySizeChangeSupport.addListener(listener);
     }
 }
 
 
-class DataChangeSupport<T> extends PropertyChangeSupport {
+interface DataChangeListener<T> {
+    void dataChanged(T oldValue, T newValue);
+}
+
+
+class DataChangeSupport<T> {
+    private final List<DataChangeListener<T>> listeners;
     private T value;
-    private String propertyName;
     
     
-    public DataChangeSupport(Object source, String propertyName, T initialValue) {
-        super(source);
-        this.propertyName = propertyName;
+    public DataChangeSupport(T initialValue) {
+        listeners = new CopyOnWriteArrayList<DataChangeListener<T>>();
         value = initialValue;
     }
     
     
+    public void addListener(DataChangeListener<T> listener) {
+        listeners.add(listener);
+    }
+    
+    
+    public void removeListener(DataChangeListener<T> listener) {
+        listeners.remove(listener);
+    }
+    
+    
     public T getValue() {
         return value;
     }
@@ -359,7 +482,10 @@ class DataChangeSupport<T> extends PropertyChangeSupport {
     public void setValue(T newValue) {
         T oldValue = value;
         value = newValue;
-        firePropertyChange(propertyName, oldValue, newValue);
+        if (!Objects.equals(oldValue, newValue)) {
+            for (DataChangeListener<T> listener : listeners)
+                listener.dataChanged(oldValue, newValue);
+        }
     }
 }
 
@@ -407,4 +533,15 @@ class StoneAlreadyPlacedException extends BadInputStoneException {
     public StoneAlreadyPlacedException(String message) {
         super(message);
     }
+}
+
+
+class ForbiddenMoveException extends BadInputStoneException {
+    public ForbiddenMoveException() {
+    }
+    
+    
+    public ForbiddenMoveException(String message) {
+        super(message);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,140 @@
+/**
+ * @author 潘学海
+ */
+
+package Gomoku;
+
+import java.util.Arrays;
+
+class BoardSnapshot {
+    private final byte[][] rows;
+    private final int[] moves;
+    private final int moveCount;
+    private final long hash;
+    private final long version;
+    
+    
+    BoardSnapshot(byte[][] rows, int[] moves, int moveCount, long hash, long version) {
+        this.rows = rows;
+        this.moves = moves;
+        this.moveCount = moveCount;
+        this.hash = hash;
+        this.version = version;
+    }
+    
+    
+    public StoneType getStoneType(int i, int j) {
+        return FastBoard.typeOf(rows[i][j]);
+    }
+    
+    
+    public byte getColor(int i, int j) {
+        return rows[i][j];
+    }
+    
+    
+    public int getMoveCount() {
+        return moveCount;
+    }
+    
+    
+    public int getMove(int ply) {
+        if (ply < 0 || ply >= moveCount)
+            throw new ArrayIndexOutOfBoundsException(ply);
+        return moves[ply];
+    }
+    
+    
+    public int getLastMove() {
+        return getMove(moveCount - 1);
+    }
+    
+    
+    public StoneType getNextStoneType() {
+        return (moveCount % 2 == 0 ? StoneType.BLACK : StoneType.WHITE);
+    }
+    
+    
+    public long getHash() {
+        return hash;
+    }
+    
+    
+    public long getVersion() {
+        return version;
+    }
+    
+    
+    public boolean isEmpty() {
+        return moveCount == 0;
+    }
+}
+
+
+class SnapshotSupport {
+    private byte[][] rows;
+    private final boolean[] rowShared;
+    private int[] moves;
+    private int sharedMoveCount;
+    private int moveCount;
+    private long version;
+    private volatile BoardSnapshot latest;
+    
+    
+    SnapshotSupport() {
+        rows = new byte[Board.n + 2][Board.n + 2];
+        rowShared = new boolean[Board.n + 2];
+        moves = new int[Board.n * Board.n];
+        sharedMoveCount = 0;
+        moveCount = 0;
+        version = 0;
+        latest = new BoardSnapshot(rows.clone(), moves, 0, 0, version);
+        Arrays.fill(rowShared, true);
+    }
+    
+    
+    public BoardSnapshot getLatest() {
+        return latest;
+    }
+    
+    
+    public void clear() {
+        rows = new byte[Board.n + 2][Board.n + 2];
+        Arrays.fill(rowShared, false);
+        moves = new int[Board.n * Board.n];
+        sharedMoveCount = 0;
+        moveCount = 0;
+    }
+    
+    
+    public void push(int i, int j, StoneType type) {
+        setCell(i, j, FastBoard.colorOf(type));
+        if (moveCount < sharedMoveCount) {
+            moves = Arrays.copyOf(moves, moves.length);
+            sharedMoveCount = 0;
+        }
+        moves[moveCount++] = FastBoard.indexOf(i, j);
+    }
+    
+    
+    public void pop() {
+        int index = moves[--moveCount];
+        setCell(FastBoard.getI(index), FastBoard.getJ(index), FastBoard.SPACE);
+    }
+    
+    
+    public void publish(long hash) {
+        latest = new BoardSnapshot(rows.clone(), moves, moveCount, hash, ++version);
+        Arrays.fill(rowShared, true);
+        sharedMoveCount = Math.max(sharedMoveCount, moveCount);
+    }
+    
+    
+    private void setCell(int i, int j, byte color) {
+        if (rowShared[i]) {
+            rows[i] = rows[i].clone();
+            rowShared[i] = false;
+        }
+        rows[i][j] = color;
+    }
+}
\ No newline at end of file
@@ -9,6 +9,7 @@ import java.awt.*;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Stack;
 
@@ -19,21 +20,52 @@ class Display extends JPanel {
     private final Board board;
     private final JLabel messageLabel;
     private final List<Integer> indexOfHighlightedStones;
+    private final DataChangeSupport<Boolean> reviewingChangeSupport;
+    private final DataChangeSupport<Integer> reviewPlyChangeSupport;
+    private volatile GameReview review;
+    private final VariationTree variations;
+    private final byte[] heatmapBuckets;
+    private final Object heatmapLock;
+    private final Timer heatmapTimer;
+    private volatile boolean heatmapShown;
+    private volatile MonteCarloTreeSearch heatmapSearch;
+    private SearchResult heatmapResult;
+    private BoardSnapshot heatmapSnapshot;
     
     public static final int sideLength = 40;
     public static final int starRadius = 5;
     public static final int stoneRadius = 18;
+    public static final int heatmapRadius = 2 * stoneRadius / 3;
+    public static final int heatmapBucketNumber = 10;
+    public static final int heatmapRefreshMillis = 100;
+    public static final int heatmapSliceMillis = 100;
+    public static final long heatmapMaxNodes = 1L << 18;
+    public static final long heatmapMaxPlayouts = 200000;
+    private static final byte NO_BUCKET = -1;
     private static final Color backgroundColor = new Color(244, 240, 220);
     private static final Color black = new Color(32, 32, 32);
     private static final Color white = new Color(220, 220, 220);
     private static final Color gray = new Color(160, 160, 160);
     private static final Font indexFont = new Font(Font.DIALOG, Font.PLAIN, 3 * stoneRadius / 4);
+    private static final Color[] heatmapColors = createHeatmapColors();
     
     
     public Display(int x, int y, Board board) {
         super();
         this.board = board;
         indexOfHighlightedStones = new ArrayList<Integer>();
+        reviewingChangeSupport = new DataChangeSupport<Boolean>(false);
+        reviewPlyChangeSupport = new DataChangeSupport<Integer>(0);
+        review = null;
+        variations = new VariationTree();
+        board.addHistorySizeChangeListener((oldSize, newSize) -> variations.follow(board));
+        heatmapBuckets = new byte[FastBoard.size];
+        Arrays.fill(heatmapBuckets, NO_BUCKET);
+        heatmapLock = new Object();
+        heatmapTimer = new Timer(heatmapRefreshMillis, e -> refreshHeatmap());
+        heatmapTimer.setCoalesce(true);
+        heatmapShown = false;
+        board.addHistorySizeChangeListener((oldSize, newSize) -> stopHeatmapSlice());
         messageLabel = new JLabel("");
         boundXL = x;
         boundYU = y;
@@ -53,6 +85,8 @@ class Display extends JPanel {
     
     
     public void newGame() {
+        stopReview();
+        variations.clear();
         board.newGame();
         indexOfHighlightedStones.clear();
         Graphics2D g2D = (Graphics2D) getGraphics();
@@ -62,14 +96,107 @@ class Display extends JPanel {
     
     
     public void reset() {
+        stopReview();
+        variations.clear();
         board.reset();
         indexOfHighlightedStones.clear();
     }
     
     
     public void loadGame(File file) throws IOException, BadInputStoneException {
+        stopReview();
+        variations.clear();
         board.loadGame(file);
         paintStonesWithIndexFromHistory((Graphics2D) getGraphics());
+        review = new GameReview(board.snapshot());
+        reviewPlyChangeSupport.setValue(review.getPly());
+        reviewingChangeSupport.setValue(true);
+    }
+    
+    
+    public void seekReview(int ply) {
+        GameReview current = review;
+        if (current == null || ply == current.getPly())
+            return;
+        Graphics2D g2D = (Graphics2D) getGraphics();
+        eraseStoneIndexHighlight(g2D);
+        current.seek(ply, new VariationListener() {
+            @Override
+            public void retract(int move) {
+                eraseStone(g2D, FastBoard.getI(move), FastBoard.getJ(move));
+            }
+            
+            
+            @Override
+            public void put(int move) {
+                int index = current.getPlyOf(move);
+                paintStoneWithIndex(g2D, board.getStoneFromIndex(index), index, false);
+            }
+        });
+        stopHeatmapSlice();
+        if (current.isAtEnd()) {
+            paintStoneIndexHighlight(g2D, board.getIndexOfRowStones());
+            paintPlayer(g2D);
+        }
+        else {
+            if (current.getPly() > 0)
+                paintStoneIndexHighlight(g2D, List.of(current.getPly() - 1));
+            messageLabel.setText("复盘 " + current.getPly() + " / " + current.getLength());
+        }
+        reviewPlyChangeSupport.setValue(current.getPly());
+    }
+    
+    
+    public void stepReview(int delta) {
+        GameReview current = review;
+        if (current != null)
+            seekReview(current.getPly() + delta);
+    }
+    
+    
+    public void stopReview() {
+        GameReview current = review;
+        if (current == null)
+            return;
+        seekReview(current.getLength());
+        review = null;
+        reviewingChangeSupport.setValue(false);
+    }
+    
+    
+    public boolean isReviewing() {
+        return review != null;
+    }
+    
+    
+    public int getReviewPly() {
+        GameReview current = review;
+        return (current != null ? current.getPly() : board.getHistorySize());
+    }
+    
+    
+    public int getReviewLength() {
+        GameReview current = review;
+        return (current != null ? current.getLength() : board.getHistorySize());
+    }
+    
+    
+    public void addReviewingChangeListener(DataChangeListener<Boolean> listener) {
+        reviewingChangeSupport.addListener(listener);
+    }
+    
+    
+    public void addReviewPlyChangeListener(DataChangeListener<Integer> listener) {
+        reviewPlyChangeSupport.addListener(listener);
+    }
+    
+    
+    private boolean leaveReview() {
+        GameReview current = review;
+        if (current != null && !current.isAtEnd())
+            return false;
+        stopReview();
+        return true;
     }
     
     
@@ -133,7 +260,9 @@ class Display extends JPanel {
     }
     
     
-    public void putStone(int i, int j) throws GameNotStartedException, StoneOutOfBoardRangeException, StoneAlreadyPlacedException {
+    public void putStone(int i, int j) throws GameNotStartedException, StoneOutOfBoardRangeException, StoneAlreadyPlacedException, ForbiddenMoveException {
+        if (!leaveReview())
+            return;
         board.putStone(i, j);
         Graphics2D g2D = (Graphics2D) getGraphics();
         paintStone(g2D, board.getLastStone());
@@ -153,6 +282,8 @@ class Display extends JPanel {
     
     
     public void retractStone() {
+        if (!leaveReview())
+            return;
         try {
             Stone lastStone = board.retractStone();
             Graphics2D g2D = (Graphics2D) getGraphics();
@@ -165,7 +296,198 @@ class Display extends JPanel {
     }
     
     
-    public void putStoneFromMouse(int x, int y) throws GameNotStartedException, StoneOutOfBoardRangeException, StoneAlreadyPlacedException {
+    public void jumpToVariation(int node) {
+        if (!leaveReview() || node == variations.getCurrent())
+            return;
+        if (variations.getDepth(variations.commonAncestor(variations.getCurrent(), node)) < board.getPresetStoneNumber())
+            return;
+        Graphics2D g2D = (Graphics2D) getGraphics();
+        eraseStoneIndexHighlight(g2D);
+        variations.jump(node, board, new VariationListener() {
+            @Override
+            public void retract(int move) {
+                eraseStone(g2D, FastBoard.getI(move), FastBoard.getJ(move));
+            }
+            
+            
+            @Override
+            public void put(int move) {
+                paintStoneWithIndex(g2D, board.getLastStone(), board.getHistorySize() - 1, false);
+            }
+        });
+        paintStoneIndexHighlight(g2D, board.getIndexOfRowStones());
+        paintPlayer(g2D);
+    }
+    
+    
+    public void previousVariationMove() {
+        int current = variations.getCurrent();
+        if (current != VariationTree.root)
+            jumpToVariation(variations.getParent(current));
+    }
+    
+    
+    public void nextVariationMove() {
+        int child = variations.getFirstChild(variations.getCurrent());
+        if (child != VariationTree.NONE)
+            jumpToVariation(child);
+    }
+    
+    
+    public void switchVariation(int direction) {
+        int current = variations.getCurrent();
+        if (current == VariationTree.root)
+            return;
+        List<Integer> siblings = new ArrayList<Integer>();
+        for (int node = variations.getFirstChild(variations.getParent(current)); node != VariationTree.NONE; node = variations.getNextSibling(node))
+            siblings.add(node);
+        int k = Math.floorMod(siblings.indexOf(current) + direction, siblings.size());
+        jumpToVariation(siblings.get(k));
+    }
+    
+    
+    public VariationTree getVariations() {
+        return variations;
+    }
+    
+    
+    public void showHeatmap() {
+        if (heatmapShown)
+            return;
+        heatmapShown = true;
+        MonteCarloTreeSearch search = new MonteCarloTreeSearch(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), board.getRule(), Math.min(heatmapMaxNodes, MonteCarloTreeSearch.getDefaultMaxNodes()));
+        heatmapSearch = search;
+        Thread worker = new Thread(() -> searchHeatmap(search), "heatmap-search");
+        worker.setDaemon(true);
+        worker.setPriority(Thread.MIN_PRIORITY);
+        worker.start();
+        heatmapTimer.start();
+    }
+    
+    
+    public void hideHeatmap() {
+        if (!heatmapShown)
+            return;
+        heatmapShown = false;
+        heatmapSearch.stop();
+        heatmapSearch = null;
+        heatmapTimer.stop();
+        synchronized (heatmapLock) {
+            heatmapResult = null;
+            heatmapSnapshot = null;
+        }
+        Graphics2D g2D = (Graphics2D) getGraphics();
+        BoardSnapshot snapshot = currentSnapshot();
+        for (int i = 1; i <= Board.n; ++i) {
+            for (int j = 1; j <= Board.n; ++j) {
+                if (heatmapBuckets[FastBoard.indexOf(i, j)] != NO_BUCKET && snapshot.getColor(i, j) == FastBoard.SPACE)
+                    eraseStone(g2D, i, j);
+            }
+        }
+        Arrays.fill(heatmapBuckets, NO_BUCKET);
+    }
+    
+    
+    public void toggleHeatmap() {
+        if (heatmapShown)
+            hideHeatmap();
+        else
+            showHeatmap();
+    }
+    
+    
+    public boolean isHeatmapShown() {
+        return heatmapShown;
+    }
+    
+    
+    private boolean isHeatmapActive() {
+        return board.isGameStarted() || review != null;
+    }
+    
+    
+    private BoardSnapshot currentSnapshot() {
+        GameReview current = review;
+        return (current != null ? current.getSnapshot() : board.snapshot());
+    }
+    
+    
+    private void stopHeatmapSlice() {
+        MonteCarloTreeSearch search = heatmapSearch;
+        if (search != null)
+            search.stop();
+    }
+    
+    
+    private void searchHeatmap(MonteCarloTreeSearch search) {
+        BoardSnapshot searched = null;
+        long visits = 0;
+        while (heatmapSearch == search) {
+            BoardSnapshot snapshot = currentSnapshot();
+            SearchResult result = null;
+            if (snapshot != searched) {
+                searched = snapshot;
+                visits = -1;
+            }
+            if (isHeatmapActive() && (visits < 0 || (visits < heatmapMaxPlayouts && !search.isTreeFull()))) {
+                result = search.search(new FastBoard(snapshot), heatmapSliceMillis, (visits < 0 ? heatmapMaxPlayouts : heatmapMaxPlayouts - visits));
+                visits = (visits < 0 ? result.getReusedVisits() : visits) + result.getPlayouts();
+                synchronized (heatmapLock) {
+                    if (heatmapSearch == search) {
+                        heatmapResult = result;
+                        heatmapSnapshot = snapshot;
+                    }
+                }
+            }
+            if (result == null || result.getPlayouts() == 0) {
+                try {
+                    Thread.sleep(heatmapSliceMillis);
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+    
+    
+    private void refreshHeatmap() {
+        SearchResult result;
+        BoardSnapshot searched;
+        synchronized (heatmapLock) {
+            result = heatmapResult;
+            searched = heatmapSnapshot;
+        }
+        BoardSnapshot snapshot = currentSnapshot();
+        boolean current = (result != null && searched == snapshot && isHeatmapActive());
+        Graphics2D g2D = (Graphics2D) getGraphics();
+        if (g2D == null)
+            return;
+        for (int i = 1; i <= Board.n; ++i) {
+            for (int j = 1; j <= Board.n; ++j) {
+                int index = FastBoard.indexOf(i, j);
+                if (snapshot.getColor(i, j) != FastBoard.SPACE) {
+                    heatmapBuckets[index] = NO_BUCKET;
+                    continue;
+                }
+                if (!current)
+                    continue;
+                float score = result.getMoveScore(index);
+                byte bucket = (Float.isNaN(score) ? NO_BUCKET : (byte) Math.min(heatmapBucketNumber - 1, (int) (score * heatmapBucketNumber)));
+                if (bucket != heatmapBuckets[index]) {
+                    eraseStone(g2D, i, j);
+                    if (bucket != NO_BUCKET) {
+                        g2D.setColor(heatmapColors[bucket]);
+                        fillCircle(g2D, i, j, heatmapRadius);
+                    }
+                    heatmapBuckets[index] = bucket;
+                }
+            }
+        }
+    }
+    
+    
+    public void putStoneFromMouse(int x, int y) throws GameNotStartedException, StoneOutOfBoardRangeException, StoneAlreadyPlacedException, ForbiddenMoveException {
         int i = getIFromX(x), j = getJFromY(y);
         int xGrid = getXFromI(i), yGrid = getYFromJ(j);
         if ((x - xGrid) * (x - xGrid) + (y - yGrid) * (y - yGrid) < stoneRadius * stoneRadius)
@@ -181,6 +503,7 @@ class Display extends JPanel {
     
     
     private void paintBoard(Graphics2D g2D) {
+        Arrays.fill(heatmapBuckets, NO_BUCKET);
         g2D.setColor(backgroundColor);
         g2D.fillRect(stoneCenterX[0], stoneCenterY[0], sideLength * (Board.n + 1), sideLength * (Board.n + 1));
         g2D.setColor(Color.BLACK);
@@ -206,6 +529,7 @@ class Display extends JPanel {
         try {
             int centerX = getXFromI(i);
             int centerY = getYFromJ(j);
+            heatmapBuckets[FastBoard.indexOf(i, j)] = NO_BUCKET;
             g2D.setColor(backgroundColor);
             g2D.fillRect(centerX - sideLength / 2, centerY - sideLength / 2, sideLength, sideLength);
             g2D.setColor(Color.BLACK);
@@ -344,6 +668,16 @@ class Display extends JPanel {
     }
     
     
+    private static Color[] createHeatmapColors() {
+        Color[] colors = new Color[heatmapBucketNumber];
+        for (int k = 0; k < heatmapBucketNumber; ++k) {
+            float t = (k + 0.5f) / heatmapBucketNumber;
+            colors[k] = new Color(1.0f - t, t, 0.25f, 0.55f);
+        }
+        return colors;
+    }
+    
+    
     public static boolean isStar(int i, int j) {
         return ((i == 8 && j == 8) ||
                 (i == 4 && j == 4) ||
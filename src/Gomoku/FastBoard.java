@@ -0,0 +1,219 @@
+/**
+ * @author 潘学海
+ */
+
+package Gomoku;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+class FastBoard {
+    private final byte[] cells;
+    private final int[] moves;
+    private int moveCount;
+    private long hash;
+    
+    public static final int n = Board.n;
+    public static final int stride = n + 2;
+    public static final int size = stride * stride;
+    public static final byte SPACE = 0;
+    public static final byte BLACK = 1;
+    public static final byte WHITE = 2;
+    public static final byte WALL = 3;
+    static final int[] directions = {stride, stride + 1, 1, -stride + 1};
+    private static final long[][] zobrist = createZobrist();
+    
+    
+    public FastBoard() {
+        cells = new byte[size];
+        moves = new int[n * n];
+        clear();
+    }
+    
+    
+    public FastBoard(Board board) {
+        this(board.snapshot());
+    }
+    
+    
+    public FastBoard(BoardSnapshot snapshot) {
+        this();
+        for (int ply = 0; ply < snapshot.getMoveCount(); ++ply)
+            put(snapshot.getMove(ply));
+    }
+    
+    
+    public void clear() {
+        Arrays.fill(cells, WALL);
+        for (int i = 1; i <= n; ++i) {
+            for (int j = 1; j <= n; ++j)
+                cells[indexOf(i, j)] = SPACE;
+        }
+        moveCount = 0;
+        hash = 0;
+    }
+    
+    
+    public void copyFrom(FastBoard other) {
+        System.arraycopy(other.cells, 0, cells, 0, size);
+        System.arraycopy(other.moves, 0, moves, 0, other.moveCount);
+        moveCount = other.moveCount;
+        hash = other.hash;
+    }
+    
+    
+    public void put(int index) {
+        set(index, getNextColor());
+        moves[moveCount++] = index;
+    }
+    
+    
+    public int undo() {
+        int index = moves[--moveCount];
+        set(index, SPACE);
+        return index;
+    }
+    
+    
+    public void set(int index, byte color) {
+        hash ^= zobrist[cells[index]][index] ^ zobrist[color][index];
+        cells[index] = color;
+    }
+    
+    
+    public byte get(int index) {
+        return cells[index];
+    }
+    
+    
+    public boolean isEmpty(int index) {
+        return cells[index] == SPACE;
+    }
+    
+    
+    public long getHash() {
+        return hash;
+    }
+    
+    
+    public int getMoveCount() {
+        return moveCount;
+    }
+    
+    
+    public int getMove(int ply) {
+        return moves[ply];
+    }
+    
+    
+    public int getLastMove() {
+        return moves[moveCount - 1];
+    }
+    
+    
+    public boolean isFull() {
+        return moveCount == n * n;
+    }
+    
+    
+    public byte getNextColor() {
+        return (moveCount % 2 == 0 ? BLACK : WHITE);
+    }
+    
+    
+    public int runLength(int index, int direction) {
+        byte color = cells[index];
+        int d = directions[direction];
+        int length = 1;
+        for (int k = index + d; cells[k] == color; k += d)
+            ++length;
+        for (int k = index - d; cells[k] == color; k -= d)
+            ++length;
+        return length;
+    }
+    
+    
+    public boolean isFive(int index) {
+        for (int direction = 0; direction < 4; ++direction) {
+            if (runLength(index, direction) == 5)
+                return true;
+        }
+        return false;
+    }
+    
+    
+    public boolean isLastMoveFive() {
+        return moveCount > 0 && isFive(getLastMove());
+    }
+    
+    
+    public boolean hasNeighbor(int index, int distance) {
+        int i = getI(index), j = getJ(index);
+        for (int di = -distance; di <= distance; ++di) {
+            for (int dj = -distance; dj <= distance; ++dj) {
+                int ii = i + di, jj = j + dj;
+                if (ii >= 1 && ii <= n && jj >= 1 && jj <= n) {
+                    byte color = cells[indexOf(ii, jj)];
+                    if (color == BLACK || color == WHITE)
+                        return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    
+    public static long zobrist(StoneType type, int i, int j) {
+        return zobrist[colorOf(type)][indexOf(i, j)];
+    }
+    
+    
+    private static long[][] createZobrist() {
+        SplittableRandom random = new SplittableRandom(0x5A0B7157L);
+        long[][] keys = new long[WALL + 1][size];
+        for (int index = 0; index < size; ++index) {
+            keys[BLACK][index] = random.nextLong();
+            keys[WHITE][index] = random.nextLong();
+        }
+        return keys;
+    }
+    
+    
+    public static int indexOf(int i, int j) {
+        return i * stride + j;
+    }
+    
+    
+    public static int getI(int index) {
+        return index / stride;
+    }
+    
+    
+    public static int getJ(int index) {
+        return index % stride;
+    }
+    
+    
+    public static byte colorOf(StoneType type) {
+        switch (type) {
+            case BLACK:
+                return BLACK;
+            case WHITE:
+                return WHITE;
+            default:
+                return SPACE;
+        }
+    }
+    
+    
+    public static StoneType typeOf(byte color) {
+        switch (color) {
+            case BLACK:
+                return StoneType.BLACK;
+            case WHITE:
+                return StoneType.WHITE;
+            default:
+                return StoneType.SPACE;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,118 @@
+/**
+ * @author 潘学海
+ */
+
+package Gomoku;
+
+import java.util.Arrays;
+
+class GameReview {
+    private final int[] moves;
+    private final int length;
+    private final int[] plyOfCell;
+    private final byte[][] checkpoints;
+    private final long[] checkpointHashes;
+    private final byte[] cells;
+    private final byte[] target;
+    private final long version;
+    private int ply;
+    private volatile BoardSnapshot snapshot;
+    
+    public static final int checkpointInterval = 16;
+    
+    
+    public GameReview(BoardSnapshot game) {
+        length = game.getMoveCount();
+        moves = new int[length];
+        plyOfCell = new int[FastBoard.size];
+        Arrays.fill(plyOfCell, -1);
+        checkpoints = new byte[length / checkpointInterval + 1][];
+        checkpointHashes = new long[checkpoints.length];
+        cells = new byte[FastBoard.size];
+        target = new byte[FastBoard.size];
+        version = game.getVersion();
+        long hash = 0;
+        for (ply = 0; ply < length; ++ply) {
+            if (ply % checkpointInterval == 0) {
+                checkpoints[ply / checkpointInterval] = cells.clone();
+                checkpointHashes[ply / checkpointInterval] = hash;
+            }
+            int move = game.getMove(ply);
+            moves[ply] = move;
+            plyOfCell[move] = ply;
+            cells[move] = colorOfPly(ply);
+            hash ^= FastBoard.zobrist(FastBoard.typeOf(cells[move]), FastBoard.getI(move), FastBoard.getJ(move));
+        }
+        if (length % checkpointInterval == 0) {
+            checkpoints[length / checkpointInterval] = cells.clone();
+            checkpointHashes[length / checkpointInterval] = hash;
+        }
+        snapshot = createSnapshot(hash);
+    }
+    
+    
+    public void seek(int newPly, VariationListener listener) {
+        newPly = Math.max(0, Math.min(length, newPly));
+        if (newPly == ply)
+            return;
+        int checkpoint = newPly / checkpointInterval;
+        System.arraycopy(checkpoints[checkpoint], 0, target, 0, FastBoard.size);
+        long hash = checkpointHashes[checkpoint];
+        for (int k = checkpoint * checkpointInterval; k < newPly; ++k) {
+            target[moves[k]] = colorOfPly(k);
+            hash ^= FastBoard.zobrist(FastBoard.typeOf(colorOfPly(k)), FastBoard.getI(moves[k]), FastBoard.getJ(moves[k]));
+        }
+        for (int i = 1; i <= FastBoard.n; ++i) {
+            for (int j = 1; j <= FastBoard.n; ++j) {
+                int index = FastBoard.indexOf(i, j);
+                if (cells[index] == target[index])
+                    continue;
+                if (target[index] == FastBoard.SPACE)
+                    listener.retract(index);
+                else
+                    listener.put(index);
+            }
+        }
+        System.arraycopy(target, 0, cells, 0, FastBoard.size);
+        ply = newPly;
+        snapshot = createSnapshot(hash);
+    }
+    
+    
+    public int getPly() {
+        return ply;
+    }
+    
+    
+    public int getLength() {
+        return length;
+    }
+    
+    
+    public boolean isAtEnd() {
+        return ply == length;
+    }
+    
+    
+    public int getPlyOf(int move) {
+        return plyOfCell[move];
+    }
+    
+    
+    public BoardSnapshot getSnapshot() {
+        return snapshot;
+    }
+    
+    
+    private BoardSnapshot createSnapshot(long hash) {
+        byte[][] rows = new byte[FastBoard.stride][];
+        for (int i = 0; i < FastBoard.stride; ++i)
+            rows[i] = Arrays.copyOfRange(cells, i * FastBoard.stride, (i + 1) * FastBoard.stride);
+        return new BoardSnapshot(rows, moves, ply, hash, version);
+    }
+    
+    
+    private static byte colorOfPly(int ply) {
+        return (ply % 2 == 0 ? FastBoard.BLACK : FastBoard.WHITE);
+    }
+}
\ No newline at end of file
@@ -6,6 +6,8 @@ package Gomoku;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.io.File;
@@ -18,6 +20,7 @@ public class Gomoku extends JFrame {
     private final JButton newGameButton;
     private final JButton loadOrSaveGameButton;
     private final JButton showRuleButton;
+    private final JSlider reviewSlider;
     
     public static final String swap2Rule = "一. 假先方在棋盘任意下三手（二黑一白），假后方有三种选择：\n" +
                                            "     1. 选黑。\n" +
@@ -38,6 +41,7 @@ public class Gomoku extends JFrame {
         loadOrSaveGameButton = new JButton("载入游戏");
         retractButton = new JButton("悔棋");
         showRuleButton = new JButton("游戏规则");
+        reviewSlider = new JSlider(0, 0);
         
         initActionListeners();
         
@@ -88,8 +92,8 @@ public class Gomoku extends JFrame {
         });
         retractButton.addActionListener(e -> display.retractStone());
         showRuleButton.addActionListener(e -> JOptionPane.showMessageDialog(this, swap2Rule, "Swap2 规则", JOptionPane.INFORMATION_MESSAGE));
-        board.addGameStartedChangeListener(evt -> {
-            if ((Boolean) evt.getNewValue()) {
+        board.addGameStartedChangeListener((oldValue, newValue) -> {
+            if (newValue) {
                 newGameButton.setText("认输");
                 loadOrSaveGameButton.setText("保存游戏");
             }
@@ -99,7 +103,34 @@ public class Gomoku extends JFrame {
             }
             retractButton.setEnabled(board.canRetractStone());
         });
-        board.addHistorySizeChangeListener(evt -> retractButton.setEnabled(board.canRetractStone()));
+        board.addHistorySizeChangeListener((oldSize, newSize) -> retractButton.setEnabled(board.canRetractStone()));
+        bindKey(KeyEvent.VK_H, "toggleHeatmap", display::toggleHeatmap);
+        bindKey(KeyEvent.VK_LEFT, "previousMove", () -> {
+            if (display.isReviewing())
+                display.stepReview(-1);
+            else
+                display.previousVariationMove();
+        });
+        bindKey(KeyEvent.VK_RIGHT, "nextMove", () -> {
+            if (display.isReviewing())
+                display.stepReview(1);
+            else
+                display.nextVariationMove();
+        });
+        bindKey(KeyEvent.VK_UP, "previousVariation", () -> display.switchVariation(-1));
+        bindKey(KeyEvent.VK_DOWN, "nextVariation", () -> display.switchVariation(1));
+        bindKey(KeyEvent.VK_PAGE_UP, "previousMoves", () -> display.stepReview(-10));
+        bindKey(KeyEvent.VK_PAGE_DOWN, "nextMoves", () -> display.stepReview(10));
+        bindKey(KeyEvent.VK_HOME, "firstMove", () -> display.seekReview(0));
+        bindKey(KeyEvent.VK_END, "lastMove", () -> display.seekReview(display.getReviewLength()));
+        reviewSlider.setVisible(false);
+        reviewSlider.addChangeListener(e -> display.seekReview(reviewSlider.getValue()));
+        display.addReviewingChangeListener((oldValue, newValue) -> {
+            reviewSlider.setMaximum(display.getReviewLength());
+            reviewSlider.setValue(display.getReviewPly());
+            reviewSlider.setVisible(newValue);
+        });
+        display.addReviewPlyChangeListener((oldPly, newPly) -> reviewSlider.setValue(newPly));
         display.addMouseListener(new MouseListener() {
             @Override
             public void mouseClicked(MouseEvent e) {
@@ -133,6 +164,17 @@ public class Gomoku extends JFrame {
     }
     
     
+    private void bindKey(int keyCode, String name, Runnable action) {
+        display.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(keyCode, 0), name);
+        display.getActionMap().put(name, new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                action.run();
+            }
+        });
+    }
+    
+    
     private void initLayout() {
         Font font = new Font(Font.DIALOG, Font.PLAIN, Display.sideLength);
         newGameButton.setFont(font);
@@ -146,10 +188,12 @@ public class Gomoku extends JFrame {
         loadOrSaveGameButton.setBounds(display.getBoundXR() + 2 * Display.sideLength, display.getBoundYU() + 6 * Display.sideLength, 220, 2 * Display.sideLength);
         retractButton.setBounds(display.getBoundXR() + 2 * Display.sideLength, display.getBoundYU() + 9 * Display.sideLength, 220, 2 * Display.sideLength);
         showRuleButton.setBounds(display.getBoundXR() + 2 * Display.sideLength, display.getBoundYU() + 12 * Display.sideLength, 220, 2 * Display.sideLength);
+        reviewSlider.setBounds(display.getBoundXR() + 2 * Display.sideLength, display.getBoundYU() + 5 * Display.sideLength / 4, 220, Display.sideLength);
         display.add(newGameButton);
         display.add(loadOrSaveGameButton);
         display.add(retractButton);
         display.add(showRuleButton);
+        display.add(reviewSlider);
         setResizable(false);
     }
     
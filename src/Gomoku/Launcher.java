@@ -0,0 +1,40 @@
+/**
+ * @author 潘学海
+ */
+
+package Gomoku;
+
+import java.util.Arrays;
+
+public class Launcher {
+    public static final String usage = "usage: Launcher [gui | protocol | batch | export | perft | bench] [argument...]";
+    
+    
+    public static void main(String[] args) throws Exception {
+        String command = (args.length > 0 ? args[0] : "gui");
+        String[] arguments = (args.length > 0 ? Arrays.copyOfRange(args, 1, args.length) : args);
+        switch (command) {
+            case "gui":
+                Gomoku.main(arguments);
+                break;
+            case "protocol":
+                PiskvorkProtocol.main(arguments);
+                break;
+            case "batch":
+                BatchAnalyzer.main(arguments);
+                break;
+            case "export":
+                TrainingDataExporter.main(arguments);
+                break;
+            case "perft":
+                Perft.main(arguments);
+                break;
+            case "bench":
+                MonteCarloTreeSearch.main(arguments);
+                break;
+            default:
+                System.err.println(usage);
+                System.exit(2);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,574 @@
+/**
+ * @author 潘学海
+ */
+
+package Gomoku;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+class MonteCarloTreeSearch {
+    private final int threadNumber;
+    private final Rule rule;
+    private final FastBoard rootBoard;
+    private final AtomicLong nodeNumber;
+    private volatile long maxNodes;
+    private SearchNode root;
+    private volatile boolean stopped;
+    
+    public static final double exploration = 1.0;
+    public static final int expandThreshold = 1;
+    public static final int candidateDistance = 2;
+    public static final int nodeBytes = 64;
+    
+    
+    public MonteCarloTreeSearch() {
+        this(Runtime.getRuntime().availableProcessors(), Rule.STANDARD);
+    }
+    
+    
+    public MonteCarloTreeSearch(int threadNumber, Rule rule) {
+        this(threadNumber, rule, getDefaultMaxNodes());
+    }
+    
+    
+    public MonteCarloTreeSearch(int threadNumber, Rule rule, long maxNodes) {
+        this.threadNumber = Math.max(1, threadNumber);
+        this.rule = rule;
+        this.maxNodes = Math.max(1, maxNodes);
+        rootBoard = new FastBoard();
+        nodeNumber = new AtomicLong(1);
+        root = new SearchNode(-1, false, FastBoard.SPACE);
+    }
+    
+    
+    public static long getDefaultMaxNodes() {
+        return Runtime.getRuntime().maxMemory() / 4 / nodeBytes;
+    }
+    
+    
+    public long getMaxNodes() {
+        return maxNodes;
+    }
+    
+    
+    public void setMaxNodes(long maxNodes) {
+        this.maxNodes = Math.max(1, maxNodes);
+    }
+    
+    
+    public long getNodeNumber() {
+        return nodeNumber.get();
+    }
+    
+    
+    public boolean isTreeFull() {
+        return nodeNumber.get() >= maxNodes;
+    }
+    
+    
+    public int getThreadNumber() {
+        return threadNumber;
+    }
+    
+    
+    public Rule getRule() {
+        return rule;
+    }
+    
+    
+    public SearchResult search(Board board, long millis) {
+        return search(new FastBoard(board), millis, Long.MAX_VALUE);
+    }
+    
+    
+    public SearchResult search(BoardSnapshot snapshot, long millis) {
+        return search(new FastBoard(snapshot), millis, Long.MAX_VALUE);
+    }
+    
+    
+    public SearchResult search(FastBoard position, long millis, long maxPlayouts) {
+        return searchUntil(position, System.nanoTime() + millis * 1000000L, maxPlayouts);
+    }
+    
+    
+    public SearchResult searchUntil(FastBoard position, long deadline, long maxPlayouts) {
+        long startTime = System.nanoTime();
+        long reusedVisits = synchronize(position);
+        if (rule.isLastMoveWin(position) || position.isFull())
+            return new SearchResult(root, rule.isLastMoveWin(position), 0, 0, threadNumber, reusedVisits);
+        long playoutLimit = Math.max(1, maxPlayouts / threadNumber);
+        expand(root, rootBoard);
+        stopped = false;
+        Playout[] playouts = new Playout[threadNumber];
+        Thread[] workers = new Thread[threadNumber];
+        AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        for (int k = 0; k < threadNumber; ++k) {
+            Playout playout = new Playout(this, startTime + k, rule);
+            playouts[k] = playout;
+            workers[k] = new Thread(() -> {
+                try {
+                    while (!stopped && playout.count < playoutLimit && System.nanoTime() < deadline)
+                        playout.iterate(root, rootBoard);
+                }
+                catch (RuntimeException | Error e) {
+                    failure.compareAndSet(null, e);
+                    stopped = true;
+                }
+            }, "mcts-worker-" + k);
+            workers[k].setDaemon(true);
+            workers[k].start();
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            }
+            catch (InterruptedException e) {
+                stopped = true;
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (failure.get() instanceof Error)
+            throw (Error) failure.get();
+        if (failure.get() != null)
+            throw (RuntimeException) failure.get();
+        long total = 0;
+        for (Playout playout : playouts)
+            total += playout.count;
+        return new SearchResult(root, false, total, System.nanoTime() - startTime, threadNumber, reusedVisits);
+    }
+    
+    
+    public void stop() {
+        stopped = true;
+    }
+    
+    
+    public void clear() {
+        rootBoard.clear();
+        root = new SearchNode(-1, false, FastBoard.SPACE);
+        nodeNumber.set(1);
+    }
+    
+    
+    boolean canExpand() {
+        return nodeNumber.get() < maxNodes;
+    }
+    
+    
+    int expand(SearchNode node, FastBoard board) {
+        SearchNode[] expanded = node.expand(board, rule);
+        if (expanded == null)
+            return 0;
+        node.addSize(expanded.length);
+        nodeNumber.addAndGet(expanded.length);
+        return expanded.length;
+    }
+    
+    
+    private long synchronize(FastBoard position) {
+        boolean isPrefix = rootBoard.getMoveCount() <= position.getMoveCount();
+        for (int ply = 0; isPrefix && ply < rootBoard.getMoveCount(); ++ply)
+            isPrefix = (rootBoard.getMove(ply) == position.getMove(ply));
+        if (!isPrefix) {
+            rootBoard.copyFrom(position);
+            root = new SearchNode(-1, false, FastBoard.SPACE);
+            nodeNumber.set(1);
+            return 0;
+        }
+        int reusedMoveCount = rootBoard.getMoveCount();
+        for (int ply = reusedMoveCount; ply < position.getMoveCount(); ++ply) {
+            int move = position.getMove(ply);
+            SearchNode child = (root != null ? root.findChild(move) : null);
+            rootBoard.put(move);
+            root = child;
+        }
+        if (root == null) {
+            root = new SearchNode(-1, false, FastBoard.SPACE);
+            nodeNumber.set(1);
+            return 0;
+        }
+        if (rootBoard.getMoveCount() > reusedMoveCount)
+            nodeNumber.set(root.getSize());
+        return root.getVisits();
+    }
+    
+    
+    public static void main(String[] args) {
+        long millis = (args.length > 0 ? Long.parseLong(args[0]) : 2000);
+        int maxThreadNumber = (args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors());
+        FastBoard position = new FastBoard();
+        position.put(FastBoard.indexOf(8, 8));
+        position.put(FastBoard.indexOf(8, 9));
+        position.put(FastBoard.indexOf(9, 9));
+        System.out.println("threads  playouts  playouts/s  speedup");
+        double baseline = 0.0;
+        for (int k = 1; ; k *= 2) {
+            int threadNumber = Math.min(k, maxThreadNumber);
+            SearchResult result = new MonteCarloTreeSearch(threadNumber, Rule.STANDARD).search(position, millis, Long.MAX_VALUE);
+            if (threadNumber == 1)
+                baseline = result.getPlayoutsPerSecond();
+            System.out.printf("%7d  %8d  %10.0f  %7.2f%n",
+                              threadNumber,
+                              result.getPlayouts(),
+                              result.getPlayoutsPerSecond(),
+                              result.getPlayoutsPerSecond() / baseline);
+            if (threadNumber == maxThreadNumber)
+                break;
+        }
+    }
+}
+
+
+class SearchNode {
+    final int move;
+    final boolean terminal;
+    final byte winner;
+    volatile int visits;
+    volatile int virtualLoss;
+    volatile long value;
+    volatile long size;
+    volatile SearchNode[] children;
+    
+    private static final AtomicReferenceFieldUpdater<SearchNode, SearchNode[]> childrenUpdater =
+            AtomicReferenceFieldUpdater.newUpdater(SearchNode.class, SearchNode[].class, "children");
+    private static final AtomicIntegerFieldUpdater<SearchNode> visitsUpdater =
+            AtomicIntegerFieldUpdater.newUpdater(SearchNode.class, "visits");
+    private static final AtomicIntegerFieldUpdater<SearchNode> virtualLossUpdater =
+            AtomicIntegerFieldUpdater.newUpdater(SearchNode.class, "virtualLoss");
+    private static final AtomicLongFieldUpdater<SearchNode> valueUpdater =
+            AtomicLongFieldUpdater.newUpdater(SearchNode.class, "value");
+    private static final AtomicLongFieldUpdater<SearchNode> sizeUpdater =
+            AtomicLongFieldUpdater.newUpdater(SearchNode.class, "size");
+    
+    
+    SearchNode(int move, boolean terminal, byte winner) {
+        this.move = move;
+        this.terminal = terminal;
+        this.winner = winner;
+        size = 1;
+    }
+    
+    
+    int getVisits() {
+        return visits;
+    }
+    
+    
+    void addVirtualLoss() {
+        virtualLossUpdater.incrementAndGet(this);
+    }
+    
+    
+    void update(int reward) {
+        valueUpdater.addAndGet(this, reward);
+        visitsUpdater.incrementAndGet(this);
+        virtualLossUpdater.decrementAndGet(this);
+    }
+    
+    
+    void addRootVisit() {
+        visitsUpdater.incrementAndGet(this);
+    }
+    
+    
+    long getSize() {
+        return size;
+    }
+    
+    
+    void addSize(int number) {
+        sizeUpdater.addAndGet(this, number);
+    }
+    
+    
+    SearchNode[] expand(FastBoard board, Rule rule) {
+        if (children != null)
+            return null;
+        List<SearchNode> nodes = new ArrayList<SearchNode>();
+        byte mover = board.getNextColor();
+        for (int i = 1; i <= FastBoard.n; ++i) {
+            for (int j = 1; j <= FastBoard.n; ++j) {
+                int index = FastBoard.indexOf(i, j);
+                if (!isCandidate(board, index) || rule.isForbidden(board, index))
+                    continue;
+                board.put(index);
+                if (rule.isWin(board, index))
+                    nodes.add(new SearchNode(index, true, mover));
+                else
+                    nodes.add(new SearchNode(index, board.isFull(), FastBoard.SPACE));
+                board.undo();
+            }
+        }
+        SearchNode[] expanded = nodes.toArray(new SearchNode[0]);
+        return (childrenUpdater.compareAndSet(this, null, expanded) ? expanded : null);
+    }
+    
+    
+    private static boolean isCandidate(FastBoard board, int index) {
+        if (!board.isEmpty(index))
+            return false;
+        if (board.getMoveCount() == 0)
+            return index == FastBoard.indexOf((FastBoard.n + 1) / 2, (FastBoard.n + 1) / 2);
+        return board.hasNeighbor(index, MonteCarloTreeSearch.candidateDistance);
+    }
+    
+    
+    SearchNode findChild(int move) {
+        SearchNode[] current = children;
+        if (current != null) {
+            for (SearchNode child : current) {
+                if (child.move == move)
+                    return child;
+            }
+        }
+        return null;
+    }
+    
+    
+    SearchNode select(byte mover) {
+        SearchNode[] current = children;
+        double logParentVisits = Math.log(Math.max(1, visits + virtualLoss));
+        SearchNode best = null;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (SearchNode child : current) {
+            if (child.terminal && child.winner == mover)
+                return child;
+            int childVisits = child.visits + child.virtualLoss;
+            if (childVisits == 0)
+                return child;
+            double score = child.value / (2.0 * childVisits) + MonteCarloTreeSearch.exploration * Math.sqrt(logParentVisits / childVisits);
+            if (score > bestScore) {
+                bestScore = score;
+                best = child;
+            }
+        }
+        return best;
+    }
+    
+    
+    SearchNode mostVisitedChild() {
+        SearchNode[] current = children;
+        SearchNode best = null;
+        if (current != null) {
+            for (SearchNode child : current) {
+                if (child.terminal && child.winner != FastBoard.SPACE)
+                    return child;
+                if (best == null || child.visits > best.visits)
+                    best = child;
+            }
+        }
+        return best;
+    }
+    
+    
+    double getWinRate() {
+        int n = visits;
+        return (n == 0 ? 0.5 : value / (2.0 * n));
+    }
+}
+
+
+class Playout {
+    private final FastBoard board;
+    private final Rule rule;
+    private final int[] empties;
+    private final SearchNode[] path;
+    private final MonteCarloTreeSearch search;
+    private long seed;
+    long count;
+    
+    
+    Playout(MonteCarloTreeSearch search, long seed, Rule rule) {
+        this.search = search;
+        board = new FastBoard();
+        this.rule = rule;
+        empties = new int[FastBoard.n * FastBoard.n];
+        path = new SearchNode[FastBoard.n * FastBoard.n + 1];
+        this.seed = (seed == 0 ? 0x9E3779B97F4A7C15L : seed);
+    }
+    
+    
+    void iterate(SearchNode root, FastBoard rootBoard) {
+        board.copyFrom(rootBoard);
+        int rootMoveCount = rootBoard.getMoveCount();
+        int depth = 0;
+        path[0] = root;
+        SearchNode node = root;
+        byte winner;
+        while (true) {
+            if (node.terminal) {
+                winner = node.winner;
+                break;
+            }
+            if (node.children == null) {
+                if (node != root && (node.getVisits() < MonteCarloTreeSearch.expandThreshold || !search.canExpand())) {
+                    winner = simulate();
+                    break;
+                }
+                int number = search.expand(node, board);
+                for (int d = 0; d < depth && number > 0; ++d)
+                    path[d].addSize(number);
+            }
+            SearchNode child = node.select(board.getNextColor());
+            if (child == null) {
+                winner = simulate();
+                break;
+            }
+            node = child;
+            node.addVirtualLoss();
+            board.put(node.move);
+            path[++depth] = node;
+        }
+        for (int d = 1; d <= depth; ++d) {
+            SearchNode visited = path[d];
+            byte mover = ((rootMoveCount + d - 1) % 2 == 0 ? FastBoard.BLACK : FastBoard.WHITE);
+            visited.update(winner == mover ? 2 : (winner == FastBoard.SPACE ? 1 : 0));
+            path[d] = null;
+        }
+        root.addRootVisit();
+        ++count;
+    }
+    
+    
+    private byte simulate() {
+        int emptyCount = 0;
+        for (int i = 1; i <= FastBoard.n; ++i) {
+            for (int j = 1; j <= FastBoard.n; ++j) {
+                int index = FastBoard.indexOf(i, j);
+                if (board.isEmpty(index))
+                    empties[emptyCount++] = index;
+            }
+        }
+        while (emptyCount > 0) {
+            int k = nextInt(emptyCount);
+            int index = empties[k];
+            empties[k] = empties[--emptyCount];
+            if (rule.isForbidden(board, index))
+                return FastBoard.WHITE;
+            board.put(index);
+            if (rule.isWin(board, index))
+                return board.get(index);
+        }
+        return FastBoard.SPACE;
+    }
+    
+    
+    private int nextInt(int bound) {
+        seed ^= seed << 13;
+        seed ^= seed >>> 7;
+        seed ^= seed << 17;
+        return (int) (((seed >>> 32) * bound) >>> 32);
+    }
+}
+
+
+class SearchResult {
+    private final int bestMove;
+    private final double winRate;
+    private final boolean proven;
+    private final int[] principalVariation;
+    private final float[] moveScores;
+    private final long playouts;
+    private final long elapsedNanos;
+    private final int threadNumber;
+    private final long reusedVisits;
+    
+    
+    SearchResult(SearchNode root, boolean lost, long playouts, long elapsedNanos, int threadNumber, long reusedVisits) {
+        List<Integer> variation = new ArrayList<Integer>();
+        SearchNode best = root.mostVisitedChild();
+        for (SearchNode node = best; node != null && node.getVisits() > 0; node = node.mostVisitedChild())
+            variation.add(node.move);
+        this.bestMove = (best != null ? best.move : -1);
+        this.winRate = (best != null ? best.getWinRate() : (lost ? 0.0 : 0.5));
+        this.proven = (best != null ? best.terminal && best.winner != FastBoard.SPACE : lost);
+        this.principalVariation = variation.stream().mapToInt(Integer::intValue).toArray();
+        this.moveScores = new float[FastBoard.size];
+        Arrays.fill(moveScores, Float.NaN);
+        SearchNode[] children = root.children;
+        if (children != null) {
+            for (SearchNode child : children) {
+                if (child.terminal && child.winner != FastBoard.SPACE)
+                    moveScores[child.move] = 1.0f;
+                else if (child.getVisits() > 0)
+                    moveScores[child.move] = (float) child.getWinRate();
+            }
+        }
+        this.playouts = playouts;
+        this.elapsedNanos = elapsedNanos;
+        this.threadNumber = threadNumber;
+        this.reusedVisits = reusedVisits;
+    }
+    
+    
+    public boolean hasBestMove() {
+        return bestMove >= 0;
+    }
+    
+    
+    public int getBestMove() {
+        return bestMove;
+    }
+    
+    
+    public int getBestI() {
+        return FastBoard.getI(bestMove);
+    }
+    
+    
+    public int getBestJ() {
+        return FastBoard.getJ(bestMove);
+    }
+    
+    
+    public double getWinRate() {
+        return winRate;
+    }
+    
+    
+    public boolean isProven() {
+        return proven;
+    }
+    
+    
+    public int[] getPrincipalVariation() {
+        return principalVariation;
+    }
+    
+    
+    public float getMoveScore(int move) {
+        return moveScores[move];
+    }
+    
+    
+    public long getPlayouts() {
+        return playouts;
+    }
+    
+    
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+    
+    
+    public int getThreadNumber() {
+        return threadNumber;
+    }
+    
+    
+    public long getReusedVisits() {
+        return reusedVisits;
+    }
+    
+    
+    public double getPlayoutsPerSecond() {
+        return (elapsedNanos == 0 ? 0.0 : playouts * 1e9 / elapsedNanos);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,420 @@
+/**
+ * @author 潘学海
+ */
+
+package Gomoku;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+class MoveJournal implements AutoCloseable {
+    private final File file;
+    private final File rotateFile;
+    private final long lingerNanos;
+    private final long rotateBytes;
+    private final Object lock;
+    private final Thread flusher;
+    private ByteBuffer pending;
+    private ByteBuffer flushing;
+    private long appendedSequence;
+    private long durableSequence;
+    private FileChannel channel;
+    private IOException failure;
+    private boolean closed;
+    private boolean rotateRequested;
+    private long rotationNumber;
+    private long rotatedSize;
+    
+    public static final int recordSize = 16;
+    public static final byte PUT = 1;
+    public static final byte RETRACT = 2;
+    public static final byte CLEAR = 3;
+    public static final byte STATE = 4;
+    public static final byte END = 5;
+    public static final long defaultRotateBytes = 16L << 20;
+    private static final int bufferSize = 64 * 1024;
+    
+    
+    public MoveJournal(File file, long lingerMicros) throws IOException {
+        this(file, lingerMicros, defaultRotateBytes);
+    }
+    
+    
+    public MoveJournal(File file, long lingerMicros, long rotateBytes) throws IOException {
+        this.file = file;
+        this.rotateFile = new File(file.getPath() + ".rotate");
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.truncate(validLength(channel));
+        channel.position(channel.size());
+        this.lingerNanos = lingerMicros * 1000L;
+        this.rotateBytes = rotateBytes;
+        lock = new Object();
+        pending = ByteBuffer.allocateDirect(bufferSize);
+        flushing = ByteBuffer.allocateDirect(bufferSize);
+        appendedSequence = 0;
+        durableSequence = 0;
+        failure = null;
+        closed = false;
+        rotateRequested = (channel.size() > 0);
+        rotationNumber = 0;
+        rotatedSize = 0;
+        flusher = new Thread(this::flushLoop, "move-journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+    
+    
+    public JournalSession openSession(long gameId) {
+        return new JournalSession(this, gameId);
+    }
+    
+    
+    long append(long gameId, byte type, int a, int b, int c) {
+        synchronized (lock) {
+            while (pending.remaining() < recordSize && !closed) {
+                try {
+                    lock.wait();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return appendedSequence;
+                }
+            }
+            if (closed)
+                return appendedSequence;
+            putRecord(pending, gameId, type, a, b, c);
+            if (pending.position() == recordSize)
+                lock.notifyAll();
+            return ++appendedSequence;
+        }
+    }
+    
+    
+    public void awaitDurable(long sequence) throws IOException, InterruptedException {
+        synchronized (lock) {
+            while (durableSequence < sequence && failure == null)
+                lock.wait();
+            if (failure != null)
+                throw failure;
+        }
+    }
+    
+    
+    public void checkpoint() throws IOException, InterruptedException {
+        synchronized (lock) {
+            long target = rotationNumber + 1;
+            rotateRequested = true;
+            lock.notifyAll();
+            while (rotationNumber < target && failure == null && !closed)
+                lock.wait();
+            if (failure != null)
+                throw failure;
+        }
+    }
+    
+    
+    public long getDurableSequence() {
+        synchronized (lock) {
+            return durableSequence;
+        }
+    }
+    
+    
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            flusher.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (lock) {
+            channel.close();
+        }
+        if (failure != null)
+            throw failure;
+    }
+    
+    
+    private void flushLoop() {
+        while (true) {
+            long sequence;
+            boolean rotate;
+            FileChannel output;
+            synchronized (lock) {
+                while (pending.position() == 0 && !rotateRequested && !closed) {
+                    try {
+                        lock.wait();
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pending.position() == 0 && closed)
+                    return;
+                rotate = rotateRequested;
+            }
+            try {
+                if (rotate)
+                    rotate();
+                if (lingerNanos > 0) {
+                    long deadline = System.nanoTime() + lingerNanos;
+                    long remaining;
+                    while ((remaining = deadline - System.nanoTime()) > 0)
+                        LockSupport.parkNanos(remaining);
+                }
+                synchronized (lock) {
+                    ByteBuffer full = pending;
+                    pending = flushing;
+                    flushing = full;
+                    sequence = appendedSequence;
+                    output = channel;
+                    lock.notifyAll();
+                }
+                try {
+                    flushing.flip();
+                    while (flushing.hasRemaining())
+                        output.write(flushing);
+                    output.force(false);
+                }
+                finally {
+                    flushing.clear();
+                }
+                synchronized (lock) {
+                    durableSequence = sequence;
+                    if (output.size() > Math.max(rotateBytes, 2 * rotatedSize))
+                        rotateRequested = true;
+                    lock.notifyAll();
+                }
+            }
+            catch (IOException e) {
+                synchronized (lock) {
+                    failure = e;
+                    closed = true;
+                    lock.notifyAll();
+                }
+                return;
+            }
+        }
+    }
+    
+    
+    private void rotate() throws IOException {
+        FileChannel input;
+        synchronized (lock) {
+            input = channel;
+        }
+        input.position(0);
+        Map<Long, RecoveredGame> games = replay(input);
+        FileChannel output = FileChannel.open(rotateFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+            for (Map.Entry<Long, RecoveredGame> entry : games.entrySet()) {
+                RecoveredGame game = entry.getValue();
+                for (int k = -1; k < game.moves.size(); ++k) {
+                    if (buffer.remaining() < recordSize) {
+                        buffer.flip();
+                        while (buffer.hasRemaining())
+                            output.write(buffer);
+                        buffer.clear();
+                    }
+                    if (k < 0)
+                        putRecord(buffer, entry.getKey(), STATE, (game.started ? 1 : 0), game.player1StoneType.ordinal(), game.presetStoneNumber);
+                    else
+                        putRecord(buffer, entry.getKey(), PUT, game.moves.get(k)[0], game.moves.get(k)[1], 0);
+                }
+            }
+            buffer.flip();
+            while (buffer.hasRemaining())
+                output.write(buffer);
+            output.force(true);
+            Files.move(rotateFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            syncDirectory(file.getAbsoluteFile().getParentFile());
+        }
+        catch (IOException e) {
+            output.close();
+            input.position(input.size());
+            throw e;
+        }
+        synchronized (lock) {
+            channel = output;
+            rotatedSize = output.size();
+            rotateRequested = false;
+            ++rotationNumber;
+            lock.notifyAll();
+        }
+        input.close();
+    }
+    
+    
+    private static void syncDirectory(File directory) throws IOException {
+        if (System.getProperty("os.name").startsWith("Windows"))
+            return;
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+    
+    
+    public static Map<Long, Board> recover(File file) throws IOException {
+        Map<Long, RecoveredGame> games = new LinkedHashMap<Long, RecoveredGame>();
+        if (file.exists()) {
+            try (FileChannel input = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                games = replay(input);
+            }
+        }
+        Map<Long, Board> boards = new LinkedHashMap<Long, Board>();
+        for (Map.Entry<Long, RecoveredGame> entry : games.entrySet()) {
+            RecoveredGame game = entry.getValue();
+            Board board = new Board();
+            try {
+                board.restore(game.started, game.player1StoneType, game.presetStoneNumber, game.moves);
+                boards.put(entry.getKey(), board);
+            }
+            catch (BadInputStoneException ignored) {
+            }
+        }
+        return boards;
+    }
+    
+    
+    private static Map<Long, RecoveredGame> replay(FileChannel input) throws IOException {
+        Map<Long, RecoveredGame> games = new LinkedHashMap<Long, RecoveredGame>();
+        ByteBuffer record = ByteBuffer.allocate(recordSize);
+        while (readRecord(input, record)) {
+            long gameId = record.getLong(0);
+            byte type = record.get(8);
+            int a = record.get(9) & 0xFF, b = record.get(10) & 0xFF, c = record.get(11) & 0xFF;
+            RecoveredGame game = games.computeIfAbsent(gameId, id -> new RecoveredGame());
+            switch (type) {
+                case PUT:
+                    game.moves.add(new int[]{a, b});
+                    break;
+                case RETRACT:
+                    if (!game.moves.isEmpty())
+                        game.moves.remove(game.moves.size() - 1);
+                    break;
+                case CLEAR:
+                    game.moves.clear();
+                    break;
+                case STATE:
+                    game.started = (a != 0);
+                    game.player1StoneType = StoneType.values()[b % StoneType.values().length];
+                    game.presetStoneNumber = c;
+                    break;
+                case END:
+                    games.remove(gameId);
+                    break;
+                default:
+            }
+        }
+        return games;
+    }
+    
+    
+    private static long validLength(FileChannel input) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(recordSize);
+        input.position(0);
+        long length = 0;
+        while (readRecord(input, record))
+            length += recordSize;
+        return length;
+    }
+    
+    
+    private static boolean readRecord(FileChannel input, ByteBuffer record) throws IOException {
+        record.clear();
+        while (record.hasRemaining()) {
+            if (input.read(record) < 0)
+                return false;
+        }
+        return record.getInt(recordSize - 4) == checksum(record, 0);
+    }
+    
+    
+    private static void putRecord(ByteBuffer buffer, long gameId, byte type, int a, int b, int c) {
+        int start = buffer.position();
+        buffer.putLong(gameId).put(type).put((byte) a).put((byte) b).put((byte) c);
+        buffer.putInt(checksum(buffer, start));
+    }
+    
+    
+    private static int checksum(ByteBuffer buffer, int start) {
+        CRC32 crc = new CRC32();
+        for (int k = start; k < start + recordSize - 4; ++k)
+            crc.update(buffer.get(k));
+        return (int) crc.getValue();
+    }
+    
+    
+    private static class RecoveredGame {
+        private final List<int[]> moves = new ArrayList<int[]>();
+        private boolean started = false;
+        private StoneType player1StoneType = StoneType.SPACE;
+        private int presetStoneNumber = 5;
+    }
+}
+
+
+class JournalSession {
+    private final MoveJournal journal;
+    private final long gameId;
+    private long lastSequence;
+    
+    
+    JournalSession(MoveJournal journal, long gameId) {
+        this.journal = journal;
+        this.gameId = gameId;
+        lastSequence = 0;
+    }
+    
+    
+    public long getGameId() {
+        return gameId;
+    }
+    
+    
+    public void put(int i, int j) {
+        lastSequence = journal.append(gameId, MoveJournal.PUT, i, j, 0);
+    }
+    
+    
+    public void retract() {
+        lastSequence = journal.append(gameId, MoveJournal.RETRACT, 0, 0, 0);
+    }
+    
+    
+    public void clear() {
+        lastSequence = journal.append(gameId, MoveJournal.CLEAR, 0, 0, 0);
+    }
+    
+    
+    public void state(boolean started, StoneType player1StoneType, int presetStoneNumber) {
+        lastSequence = journal.append(gameId, MoveJournal.STATE, (started ? 1 : 0), player1StoneType.ordinal(), presetStoneNumber);
+    }
+    
+    
+    public void end() {
+        lastSequence = journal.append(gameId, MoveJournal.END, 0, 0, 0);
+    }
+    
+    
+    public void sync() throws IOException, InterruptedException {
+        journal.awaitDurable(lastSequence);
+    }
+}
\ No newline at end of file
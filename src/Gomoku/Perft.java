@@ -0,0 +1,406 @@
+/**
+ * @author 潘学海
+ */
+
+package Gomoku;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EmptyStackException;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutionException;
+
+class Perft {
+    private final int threadNumber;
+    private final Rule rule;
+    
+    
+    public Perft(int threadNumber, Rule rule) {
+        this.threadNumber = Math.max(1, threadNumber);
+        this.rule = rule;
+    }
+    
+    
+    public PerftResult count(FastBoard position, int depth) throws InterruptedException {
+        long startTime = System.nanoTime();
+        long[] positions = new long[depth + 1];
+        long[] terminals = new long[depth + 1];
+        if (depth > 0 && !rule.isLastMoveWin(position) && !position.isFull()) {
+            ExecutorService executor = Executors.newFixedThreadPool(threadNumber);
+            try {
+                List<Future<long[][]>> futures = new ArrayList<Future<long[][]>>();
+                for (int index : legalMoves(position)) {
+                    FastBoard board = new FastBoard();
+                    board.copyFrom(position);
+                    futures.add(executor.submit(() -> {
+                        long[][] counts = new long[2][depth + 1];
+                        visit(board, index, 1, depth, counts[0], counts[1]);
+                        return counts;
+                    }));
+                }
+                for (Future<long[][]> future : futures) {
+                    long[][] counts = future.get();
+                    for (int ply = 1; ply <= depth; ++ply) {
+                        positions[ply] += counts[0][ply];
+                        terminals[ply] += counts[1][ply];
+                    }
+                }
+            }
+            catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+            finally {
+                executor.shutdownNow();
+            }
+        }
+        return new PerftResult(positions, terminals, System.nanoTime() - startTime);
+    }
+    
+    
+    private void visit(FastBoard board, int index, int ply, int depth, long[] positions, long[] terminals) {
+        board.put(index);
+        ++positions[ply];
+        if (rule.isWin(board, index) || board.isFull())
+            ++terminals[ply];
+        else if (ply < depth) {
+            for (int i = 1; i <= FastBoard.n; ++i) {
+                for (int j = 1; j <= FastBoard.n; ++j) {
+                    int next = FastBoard.indexOf(i, j);
+                    if (board.isEmpty(next) && !rule.isForbidden(board, next))
+                        visit(board, next, ply + 1, depth, positions, terminals);
+                }
+            }
+        }
+        board.undo();
+    }
+    
+    
+    private List<Integer> legalMoves(FastBoard board) {
+        List<Integer> moves = new ArrayList<Integer>();
+        for (int i = 1; i <= FastBoard.n; ++i) {
+            for (int j = 1; j <= FastBoard.n; ++j) {
+                int index = FastBoard.indexOf(i, j);
+                if (board.isEmpty(index) && !rule.isForbidden(board, index))
+                    moves.add(index);
+            }
+        }
+        return moves;
+    }
+    
+    
+    public long compare(long seed, long steps) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threadNumber);
+        try {
+            List<Future<Long>> futures = new ArrayList<Future<Long>>();
+            for (int k = 0; k < threadNumber; ++k) {
+                long workerSeed = seed + k;
+                long workerSteps = steps / threadNumber + (k < steps % threadNumber ? 1 : 0);
+                futures.add(executor.submit(() -> new DifferentialRun(rule, workerSeed).run(workerSteps)));
+            }
+            long compared = 0;
+            for (Future<Long> future : futures)
+                compared += future.get();
+            return compared;
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IllegalStateException)
+                throw (IllegalStateException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int threadNumber = Runtime.getRuntime().availableProcessors();
+        int depth = 2;
+        Rule rule = Rule.STANDARD;
+        long differentialSteps = 0;
+        long seed = 0x5EEDL;
+        List<File> inputs = new ArrayList<File>();
+        for (int k = 0; k < args.length; ++k) {
+            switch (args[k]) {
+                case "-threads":
+                    threadNumber = Integer.parseInt(args[++k]);
+                    break;
+                case "-depth":
+                    depth = Integer.parseInt(args[++k]);
+                    break;
+                case "-rule":
+                    rule = Rule.valueOf(args[++k].toUpperCase());
+                    break;
+                case "-differential":
+                    differentialSteps = Long.parseLong(args[++k]);
+                    break;
+                case "-seed":
+                    seed = Long.parseLong(args[++k]);
+                    break;
+                default:
+                    if (args[k].startsWith("-")) {
+                        System.err.println("usage: Perft [-depth N] [-threads N] [-rule freestyle|standard|renju] [-differential steps] [-seed N] [position...]");
+                        System.exit(1);
+                    }
+                    inputs.add(new File(args[k]));
+            }
+        }
+        Perft perft = new Perft(threadNumber, rule);
+        if (differentialSteps > 0) {
+            long startTime = System.nanoTime();
+            long compared = perft.compare(seed, differentialSteps);
+            double seconds = (System.nanoTime() - startTime) / 1e9;
+            System.out.printf(Locale.ROOT, "differential: %d steps matched in %.1f s (%.0f steps/s)%n", compared, seconds, compared / seconds);
+            return;
+        }
+        List<File> positions = new ArrayList<File>();
+        for (File input : inputs)
+            positions.addAll(BatchAnalyzer.listPositions(input));
+        if (positions.isEmpty())
+            positions.add(null);
+        for (File position : positions) {
+            FastBoard board = new FastBoard();
+            if (position != null) {
+                Board source = new Board();
+                source.setRule(rule);
+                try {
+                    source.loadGame(position);
+                }
+                catch (BadInputStoneException e) {
+                    System.err.println("skipping " + position + ": " + e.getClass().getSimpleName());
+                    continue;
+                }
+                board = new FastBoard(source);
+            }
+            PerftResult result = perft.count(board, depth);
+            System.out.println((position != null ? position.getPath() : "empty board") + ":");
+            System.out.println("ply  positions  terminal  non-terminal");
+            for (int ply = 1; ply <= depth; ++ply)
+                System.out.printf(Locale.ROOT, "%3d  %9d  %8d  %12d%n", ply, result.getPositions(ply), result.getTerminalPositions(ply), result.getNonTerminalPositions(ply));
+            System.out.printf(Locale.ROOT, "%d positions in %.2f s (%.0f positions/s)%n", result.getTotalPositions(), result.getElapsedNanos() / 1e9, result.getPositionsPerSecond());
+        }
+    }
+}
+
+
+class PerftResult {
+    private final long[] positions;
+    private final long[] terminals;
+    private final long elapsedNanos;
+    
+    
+    PerftResult(long[] positions, long[] terminals, long elapsedNanos) {
+        this.positions = positions;
+        this.terminals = terminals;
+        this.elapsedNanos = elapsedNanos;
+    }
+    
+    
+    public int getDepth() {
+        return positions.length - 1;
+    }
+    
+    
+    public long getPositions(int ply) {
+        return positions[ply];
+    }
+    
+    
+    public long getTerminalPositions(int ply) {
+        return terminals[ply];
+    }
+    
+    
+    public long getNonTerminalPositions(int ply) {
+        return positions[ply] - terminals[ply];
+    }
+    
+    
+    public long getTotalPositions() {
+        long total = 0;
+        for (long count : positions)
+            total += count;
+        return total;
+    }
+    
+    
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+    
+    
+    public double getPositionsPerSecond() {
+        return (elapsedNanos == 0 ? 0.0 : getTotalPositions() * 1e9 / elapsedNanos);
+    }
+}
+
+
+class DifferentialRun {
+    private final Rule rule;
+    private final SplittableRandom random;
+    private final Board reference;
+    private final FastBoard candidate;
+    private final StringBuilder trace;
+    private final long seed;
+    private long gameNumber;
+    private boolean started;
+    private boolean colorChosen;
+    private int presetStoneNumber;
+    
+    
+    DifferentialRun(Rule rule, long seed) {
+        this.rule = rule;
+        random = new SplittableRandom(seed);
+        reference = new Board();
+        reference.setRule(rule);
+        candidate = new FastBoard();
+        trace = new StringBuilder();
+        this.seed = seed;
+        gameNumber = 0;
+        newGame();
+    }
+    
+    
+    public long run(long steps) {
+        for (long step = 0; step < steps; ++step) {
+            if (!started)
+                newGame();
+            int action = random.nextInt(100);
+            if (!colorChosen && (reference.getHistorySize() == 3 || reference.getHistorySize() == 5) && action < 50)
+                chooseColor();
+            else if (action < 15)
+                retract();
+            else
+                put();
+            check();
+        }
+        return steps;
+    }
+    
+    
+    private void newGame() {
+        reference.newGame();
+        candidate.clear();
+        started = true;
+        colorChosen = false;
+        presetStoneNumber = 5;
+        trace.setLength(0);
+        trace.append("seed ").append(seed).append(" game ").append(++gameNumber).append(':');
+    }
+    
+    
+    private void chooseColor() {
+        reference.choosePlayer1Color(StoneType.BLACK);
+        colorChosen = true;
+        presetStoneNumber = candidate.getMoveCount();
+        trace.append(" choose");
+    }
+    
+    
+    private void put() {
+        int i, j;
+        int action = random.nextInt(100);
+        if (action < 2) {
+            i = random.nextInt(Board.n + 2);
+            j = (random.nextBoolean() ? 0 : Board.n + 1);
+        }
+        else if (candidate.getMoveCount() == 0 || action < 10) {
+            i = 1 + random.nextInt(Board.n);
+            j = 1 + random.nextInt(Board.n);
+        }
+        else {
+            int near = candidate.getMove(random.nextInt(candidate.getMoveCount()));
+            i = Math.max(1, Math.min(Board.n, FastBoard.getI(near) + random.nextInt(5) - 2));
+            j = Math.max(1, Math.min(Board.n, FastBoard.getJ(near) + random.nextInt(5) - 2));
+        }
+        trace.append(' ').append(i).append(',').append(j);
+        String expected;
+        int index = FastBoard.indexOf(i, j);
+        if (i < 1 || i > Board.n || j < 1 || j > Board.n)
+            expected = StoneOutOfBoardRangeException.class.getSimpleName();
+        else if (!candidate.isEmpty(index))
+            expected = StoneAlreadyPlacedException.class.getSimpleName();
+        else if (rule.isForbidden(candidate, index))
+            expected = ForbiddenMoveException.class.getSimpleName();
+        else
+            expected = "ok";
+        String actual = "ok";
+        try {
+            reference.putStone(i, j);
+        }
+        catch (GameNotStartedException | BadInputStoneException e) {
+            actual = e.getClass().getSimpleName();
+        }
+        assertEquals("putStone", expected, actual);
+        if (!expected.equals("ok"))
+            return;
+        candidate.put(index);
+        List<Integer> expectedLine = new ArrayList<Integer>();
+        for (int direction = 0; direction < 4; ++direction) {
+            int step = FastBoard.directions[direction];
+            if (!rule.isWinningLength(candidate.runLength(index, direction), candidate.get(index)))
+                continue;
+            int start = index;
+            while (candidate.get(start - step) == candidate.get(index))
+                start -= step;
+            for (int cell = start; candidate.get(cell) == candidate.get(index); cell += step)
+                expectedLine.add(plyOf(cell));
+        }
+        if (expectedLine.isEmpty())
+            expectedLine.add(candidate.getMoveCount() - 1);
+        else
+            started = false;
+        if (candidate.isFull())
+            started = false;
+        assertEquals("getIndexOfRowStones", expectedLine, reference.getIndexOfRowStones());
+    }
+    
+    
+    private void retract() {
+        trace.append(" retract");
+        String expected = (candidate.getMoveCount() > presetStoneNumber ? "ok" : EmptyStackException.class.getSimpleName());
+        String actual = "ok";
+        Stone stone = null;
+        try {
+            stone = reference.retractStone();
+        }
+        catch (GameNotStartedException | EmptyStackException e) {
+            actual = e.getClass().getSimpleName();
+        }
+        assertEquals("retractStone", expected, actual);
+        if (stone != null) {
+            int index = candidate.undo();
+            assertEquals("retracted stone", FastBoard.getI(index) + "," + FastBoard.getJ(index), stone.getI() + "," + stone.getJ());
+        }
+    }
+    
+    
+    private void check() {
+        assertEquals("history size", candidate.getMoveCount(), reference.getHistorySize());
+        assertEquals("hash", candidate.getHash(), reference.getHash());
+        assertEquals("game over", !started, reference.isGameOver());
+        assertEquals("can retract", started && candidate.getMoveCount() > presetStoneNumber, reference.canRetractStone());
+        assertEquals("next stone", FastBoard.typeOf(candidate.getNextColor()), reference.getNextStoneType());
+    }
+    
+    
+    private int plyOf(int index) {
+        for (int ply = 0; ply < candidate.getMoveCount(); ++ply) {
+            if (candidate.getMove(ply) == index)
+                return ply;
+        }
+        return -1;
+    }
+    
+    
+    private void assertEquals(String what, Object expected, Object actual) {
+        if (!expected.equals(actual))
+            throw new IllegalStateException(what + " differs: expected " + expected + " but Board gave " + actual + " after " + trace);
+    }
+}
\ No newline at end of file
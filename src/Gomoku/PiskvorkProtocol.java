@@ -0,0 +1,338 @@
+/**
+ * @author 潘学海
+ */
+
+package Gomoku;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EmptyStackException;
+import java.util.List;
+
+class PiskvorkProtocol {
+    private final BufferedReader reader;
+    private final Writer writer;
+    private Board board;
+    private MonteCarloTreeSearch engine;
+    private Rule rule;
+    private long timeoutTurn;
+    private long timeoutMatch;
+    private long timeLeft;
+    private long maxNodes;
+    private long commandTime;
+    
+    public static final String about = "name=\"Gomoku\", version=\"1.0\", author=\"Xuehai Pan\", country=\"China\"";
+    public static final long defaultTimeoutTurn = 5000;
+    public static final long safetyMargin = 60;
+    public static final int expectedRemainingMoves = 20;
+    
+    
+    public PiskvorkProtocol(BufferedReader reader, Writer writer) {
+        this.reader = reader;
+        this.writer = writer;
+        rule = Rule.FREESTYLE;
+        timeoutTurn = defaultTimeoutTurn;
+        timeoutMatch = 0;
+        timeLeft = Long.MAX_VALUE;
+        maxNodes = MonteCarloTreeSearch.getDefaultMaxNodes();
+        board = null;
+        engine = null;
+    }
+    
+    
+    public void run() throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            commandTime = System.nanoTime();
+            line = line.trim();
+            if (line.isEmpty())
+                continue;
+            int space = line.indexOf(' ');
+            String command = (space < 0 ? line : line.substring(0, space)).toUpperCase();
+            String argument = (space < 0 ? "" : line.substring(space + 1).trim());
+            if (command.equals("END"))
+                break;
+            handle(command, argument);
+            writer.flush();
+        }
+        writer.flush();
+    }
+    
+    
+    private void handle(String command, String argument) throws IOException {
+        switch (command) {
+            case "START":
+                start(argument);
+                break;
+            case "RESTART":
+                restart();
+                break;
+            case "INFO":
+                info(argument);
+                break;
+            case "BEGIN":
+                if (checkStarted())
+                    respondWithMove();
+                break;
+            case "TURN":
+                if (checkStarted() && putStone(argument, true))
+                    respondWithMove();
+                break;
+            case "BOARD":
+                if (checkStarted())
+                    readBoard();
+                break;
+            case "TAKEBACK":
+                takeBack(argument);
+                break;
+            case "ABOUT":
+                println(about);
+                break;
+            default:
+                println("UNKNOWN " + command);
+        }
+    }
+    
+    
+    private void start(String argument) throws IOException {
+        int size;
+        try {
+            size = Integer.parseInt(argument);
+        }
+        catch (NumberFormatException e) {
+            println("ERROR bad board size");
+            return;
+        }
+        if (size != Board.n) {
+            println("ERROR only " + Board.n + "x" + Board.n + " board is supported");
+            return;
+        }
+        restart();
+    }
+    
+    
+    private void restart() throws IOException {
+        newBoard();
+        println("OK");
+    }
+    
+    
+    private void newBoard() {
+        board = new Board();
+        board.setRule(rule);
+        board.newGame();
+        board.choosePlayer1Color(StoneType.BLACK);
+        if (engine == null || engine.getRule() != rule)
+            engine = new MonteCarloTreeSearch(Runtime.getRuntime().availableProcessors(), rule, maxNodes);
+    }
+    
+    
+    private void info(String argument) {
+        int space = argument.indexOf(' ');
+        if (space < 0)
+            return;
+        String key = argument.substring(0, space).toLowerCase();
+        String value = argument.substring(space + 1).trim();
+        try {
+            switch (key) {
+                case "timeout_turn":
+                    timeoutTurn = Long.parseLong(value);
+                    break;
+                case "timeout_match":
+                    timeoutMatch = Long.parseLong(value);
+                    break;
+                case "time_left":
+                    timeLeft = Long.parseLong(value);
+                    break;
+                case "max_memory":
+                    long maxMemory = Long.parseLong(value);
+                    maxNodes = (maxMemory > 0 ? Math.min(maxMemory / 2 / MonteCarloTreeSearch.nodeBytes, MonteCarloTreeSearch.getDefaultMaxNodes())
+                                              : MonteCarloTreeSearch.getDefaultMaxNodes());
+                    if (engine != null)
+                        engine.setMaxNodes(maxNodes);
+                    break;
+                case "rule":
+                    int flags = Integer.parseInt(value);
+                    if ((flags & 4) != 0)
+                        rule = Rule.RENJU;
+                    else if ((flags & 1) != 0)
+                        rule = Rule.STANDARD;
+                    else
+                        rule = Rule.FREESTYLE;
+                    if (board != null && board.hasNoHistory())
+                        newBoard();
+                    break;
+                default:
+            }
+        }
+        catch (NumberFormatException ignored) {
+        }
+    }
+    
+    
+    private void readBoard() throws IOException {
+        List<int[]> ownStones = new ArrayList<int[]>();
+        List<int[]> opponentStones = new ArrayList<int[]>();
+        String error = null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.equalsIgnoreCase("DONE"))
+                break;
+            String[] fields = line.split(",");
+            if (fields.length < 3)
+                continue;
+            try {
+                int[] stone = {Integer.parseInt(fields[0].trim()), Integer.parseInt(fields[1].trim())};
+                switch (Integer.parseInt(fields[2].trim())) {
+                    case 1:
+                        ownStones.add(stone);
+                        break;
+                    case 2:
+                        opponentStones.add(stone);
+                        break;
+                    case 3:
+                        error = "ERROR continuous games with winning-line stones are not supported";
+                        break;
+                    default:
+                        error = "ERROR bad board line " + line;
+                }
+            }
+            catch (NumberFormatException e) {
+                error = "ERROR bad board line " + line;
+            }
+        }
+        if (error != null) {
+            println(error);
+            return;
+        }
+        newBoard();
+        List<int[]> first = (ownStones.size() >= opponentStones.size() ? ownStones : opponentStones);
+        List<int[]> second = (first == ownStones ? opponentStones : ownStones);
+        for (int k = 0; k < first.size(); ++k) {
+            if (!putStone(first.get(k)[0], first.get(k)[1]))
+                return;
+            if (k < second.size() && !putStone(second.get(k)[0], second.get(k)[1]))
+                return;
+        }
+        respondWithMove();
+    }
+    
+    
+    private void takeBack(String argument) throws IOException {
+        if (!checkStarted())
+            return;
+        try {
+            Stone lastStone = board.getLastStone();
+            int[] point = parsePoint(argument);
+            if (point == null || lastStone.getI() != point[0] + 1 || lastStone.getJ() != point[1] + 1) {
+                println("ERROR takeback does not match the last move");
+                return;
+            }
+            board.retractStone();
+            println("OK");
+        }
+        catch (EmptyStackException | GameNotStartedException e) {
+            println("ERROR nothing to take back");
+        }
+    }
+    
+    
+    private boolean putStone(String argument, boolean respondOnError) throws IOException {
+        int[] point = parsePoint(argument);
+        if (point == null) {
+            if (respondOnError)
+                println("ERROR bad coordinates " + argument);
+            return false;
+        }
+        return putStone(point[0], point[1]);
+    }
+    
+    
+    private boolean putStone(int x, int y) throws IOException {
+        try {
+            board.putStone(x + 1, y + 1);
+            return true;
+        }
+        catch (GameNotStartedException e) {
+            println("ERROR game is over");
+        }
+        catch (ForbiddenMoveException e) {
+            println("ERROR forbidden move " + x + "," + y);
+        }
+        catch (BadInputStoneException e) {
+            println("ERROR illegal move " + x + "," + y);
+        }
+        return false;
+    }
+    
+    
+    private void respondWithMove() throws IOException {
+        SearchResult result = engine.searchUntil(new FastBoard(board), getSearchDeadline(), Long.MAX_VALUE);
+        if (!result.hasBestMove()) {
+            println("ERROR no legal move");
+            return;
+        }
+        println(String.format("MESSAGE playouts=%d playouts/s=%.0f winrate=%.3f",
+                              result.getPlayouts(),
+                              result.getPlayoutsPerSecond(),
+                              result.getWinRate()));
+        int x = result.getBestI() - 1, y = result.getBestJ() - 1;
+        if (putStone(x, y))
+            println(x + "," + y);
+    }
+    
+    
+    private long getSearchDeadline() {
+        long budget = (timeoutTurn > 0 ? timeoutTurn : 0);
+        if (timeLeft != Long.MAX_VALUE)
+            budget = Math.min(budget, timeLeft / expectedRemainingMoves);
+        else if (timeoutMatch > 0)
+            budget = Math.min(budget, timeoutMatch / expectedRemainingMoves);
+        return commandTime + Math.max(0, budget - safetyMargin) * 1000000L;
+    }
+    
+    
+    private boolean checkStarted() throws IOException {
+        if (board == null) {
+            println("ERROR START has not been received");
+            return false;
+        }
+        return true;
+    }
+    
+    
+    private void println(String message) throws IOException {
+        writer.write(message);
+        writer.write('\n');
+    }
+    
+    
+    private static int[] parsePoint(String argument) {
+        String[] fields = argument.split(",");
+        if (fields.length < 2)
+            return null;
+        try {
+            return new int[]{Integer.parseInt(fields[0].trim()), Integer.parseInt(fields[1].trim())};
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    
+    public static void main(String[] args) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(FileDescriptor.in), StandardCharsets.US_ASCII));
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), StandardCharsets.US_ASCII));
+        new PiskvorkProtocol(reader, writer).run();
+    }
+}
\ No newline at end of file
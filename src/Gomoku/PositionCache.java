@@ -0,0 +1,365 @@
+/**
+ * @author 潘学海
+ */
+
+package Gomoku;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+enum EvictionPolicy {
+    OLDEST_FIRST, LEAST_EFFORT_FIRST
+}
+
+
+class CacheEntry {
+    private final long hash;
+    private final long stamp;
+    private final float score;
+    private final int effort;
+    private final int budgetMillis;
+    private final int bestMove;
+    private final byte bound;
+    
+    public static final byte ESTIMATE = 0;
+    public static final byte EXACT = 1;
+    
+    
+    CacheEntry(long hash, long stamp, float score, int effort, int budgetMillis, int bestMove, byte bound) {
+        this.hash = hash;
+        this.stamp = stamp;
+        this.score = score;
+        this.effort = effort;
+        this.budgetMillis = budgetMillis;
+        this.bestMove = bestMove;
+        this.bound = bound;
+    }
+    
+    
+    public long getHash() {
+        return hash;
+    }
+    
+    
+    public long getStamp() {
+        return stamp;
+    }
+    
+    
+    public float getScore() {
+        return score;
+    }
+    
+    
+    public int getEffort() {
+        return effort;
+    }
+    
+    
+    public int getBudgetMillis() {
+        return budgetMillis;
+    }
+    
+    
+    public int getBestMove() {
+        return bestMove;
+    }
+    
+    
+    public byte getBound() {
+        return bound;
+    }
+    
+    
+    public boolean isExact() {
+        return bound == EXACT;
+    }
+    
+    
+    public boolean isBetterThan(CacheEntry other) {
+        if (isExact() != other.isExact())
+            return isExact();
+        if (budgetMillis != other.budgetMillis)
+            return budgetMillis > other.budgetMillis;
+        return effort >= other.effort;
+    }
+}
+
+
+class PositionCache implements AutoCloseable {
+    private final File file;
+    private final File compactFile;
+    private final long capacity;
+    private final EvictionPolicy evictionPolicy;
+    private final Rule rule;
+    private final ReentrantReadWriteLock lock;
+    private final Map<Long, Integer> index;
+    private final FileChannel lockChannel;
+    private final ReentrantLock processLock;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long indexedEnd;
+    
+    public static final int magic = 0x474D4B43;
+    public static final int version = 2;
+    public static final int headerSize = 64;
+    public static final int recordSize = 32;
+    private static final Map<String, ReentrantLock> processLocks = new ConcurrentHashMap<String, ReentrantLock>();
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int RETIRED_OFFSET = 8;
+    private static final int RULE_OFFSET = 12;
+    private static final int END_OFFSET = 16;
+    
+    
+    public PositionCache(File file, long capacity, EvictionPolicy evictionPolicy, Rule rule) throws IOException {
+        if (capacity < recordSize || headerSize + capacity > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("bad cache capacity " + capacity);
+        this.file = file;
+        this.compactFile = new File(file.getPath() + ".compact");
+        this.capacity = capacity - capacity % recordSize;
+        this.evictionPolicy = evictionPolicy;
+        this.rule = rule;
+        lock = new ReentrantReadWriteLock();
+        index = new ConcurrentHashMap<Long, Integer>();
+        File lockFile = new File(file.getPath() + ".lock");
+        processLock = processLocks.computeIfAbsent(lockFile.getCanonicalPath(), path -> new ReentrantLock());
+        lockChannel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            FileLock fileLock = lockFile();
+            try {
+                open();
+            }
+            finally {
+                unlockFile(fileLock);
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            if (channel != null)
+                channel.close();
+            lockChannel.close();
+            throw e;
+        }
+    }
+    
+    
+    public Rule getRule() {
+        return rule;
+    }
+    
+    
+    public CacheEntry get(long hash, long minBudgetMillis) throws IOException {
+        synchronizeWithFile();
+        lock.readLock().lock();
+        try {
+            Integer offset = index.get(hash);
+            if (offset == null)
+                return null;
+            CacheEntry entry = read(offset);
+            return (entry.isExact() || entry.getBudgetMillis() >= minBudgetMillis ? entry : null);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    
+    public void put(long hash, byte bound, float score, int effort, long budgetMillis, int bestMove) throws IOException {
+        lock.writeLock().lock();
+        FileLock fileLock = null;
+        try {
+            fileLock = lockFile();
+            if (buffer.getInt(RETIRED_OFFSET) != 0)
+                open();
+            else
+                refresh();
+            CacheEntry entry = new CacheEntry(hash, System.currentTimeMillis(), score, effort, (int) Math.min(Integer.MAX_VALUE, budgetMillis), bestMove, bound);
+            Integer offset = index.get(hash);
+            if (offset != null && !entry.isBetterThan(read(offset)))
+                return;
+            if (indexedEnd + recordSize > buffer.capacity())
+                compact();
+            int end = (int) indexedEnd;
+            write(buffer, end, entry);
+            buffer.putLong(END_OFFSET, end + recordSize);
+            index.put(hash, end);
+            indexedEnd = end + recordSize;
+        }
+        finally {
+            if (fileLock != null)
+                unlockFile(fileLock);
+            lock.writeLock().unlock();
+        }
+    }
+    
+    
+    public int size() {
+        return index.size();
+    }
+    
+    
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            buffer.force();
+            channel.close();
+            lockChannel.close();
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    
+    private void synchronizeWithFile() throws IOException {
+        lock.readLock().lock();
+        try {
+            if (buffer.getInt(RETIRED_OFFSET) == 0 && buffer.getLong(END_OFFSET) == indexedEnd)
+                return;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+        lock.writeLock().lock();
+        try {
+            if (buffer.getInt(RETIRED_OFFSET) != 0) {
+                FileLock fileLock = lockFile();
+                try {
+                    open();
+                }
+                finally {
+                    unlockFile(fileLock);
+                }
+            }
+            else
+                refresh();
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    
+    private FileLock lockFile() throws IOException {
+        processLock.lock();
+        try {
+            return lockChannel.lock();
+        }
+        catch (IOException | RuntimeException e) {
+            processLock.unlock();
+            throw e;
+        }
+    }
+    
+    
+    private void unlockFile(FileLock fileLock) throws IOException {
+        try {
+            fileLock.release();
+        }
+        finally {
+            processLock.unlock();
+        }
+    }
+    
+    
+    private void open() throws IOException {
+        if (channel != null)
+            channel.close();
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() < headerSize) {
+            ByteBuffer header = createHeader(headerSize);
+            channel.write(header, 0);
+            channel.write(ByteBuffer.wrap(new byte[1]), headerSize + capacity - 1);
+            channel.force(true);
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        if (buffer.getInt(MAGIC_OFFSET) != magic || buffer.getInt(VERSION_OFFSET) != version)
+            throw new IOException(file + " is not a position cache");
+        if (buffer.getInt(RULE_OFFSET) != rule.ordinal())
+            throw new IOException(file + " was built for rule " + Rule.values()[Math.floorMod(buffer.getInt(RULE_OFFSET), Rule.values().length)].name().toLowerCase() + ", not " + rule.name().toLowerCase());
+        index.clear();
+        indexedEnd = headerSize;
+        refresh();
+    }
+    
+    
+    private void refresh() {
+        long end = Math.min(buffer.getLong(END_OFFSET), buffer.capacity());
+        for (long offset = indexedEnd; offset + recordSize <= end; offset += recordSize)
+            index.put(buffer.getLong((int) offset), (int) offset);
+        indexedEnd = end;
+    }
+    
+    
+    private void compact() throws IOException {
+        List<CacheEntry> entries = new ArrayList<CacheEntry>();
+        for (int offset : index.values())
+            entries.add(read(offset));
+        if (evictionPolicy == EvictionPolicy.OLDEST_FIRST)
+            entries.sort(Comparator.comparingLong(CacheEntry::getStamp).reversed());
+        else
+            entries.sort(Comparator.comparing(CacheEntry::isExact).thenComparingInt(CacheEntry::getBudgetMillis).thenComparingInt(CacheEntry::getEffort).reversed());
+        int kept = (int) Math.min(entries.size(), capacity / recordSize / 2);
+        ByteBuffer content = createHeader(headerSize + kept * recordSize);
+        for (int k = 0; k < kept; ++k)
+            write(content, headerSize + k * recordSize, entries.get(k));
+        content.putLong(END_OFFSET, headerSize + kept * recordSize);
+        try (FileChannel output = FileChannel.open(compactFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            output.write(content, 0);
+            output.write(ByteBuffer.wrap(new byte[1]), headerSize + capacity - 1);
+            output.force(true);
+        }
+        buffer.putInt(RETIRED_OFFSET, 1);
+        buffer.force();
+        Files.move(compactFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        open();
+    }
+    
+    
+    private CacheEntry read(int offset) {
+        return new CacheEntry(buffer.getLong(offset),
+                              buffer.getLong(offset + 8),
+                              buffer.getFloat(offset + 16),
+                              buffer.getInt(offset + 20),
+                              buffer.getInt(offset + 27),
+                              buffer.getShort(offset + 24),
+                              buffer.get(offset + 26));
+    }
+    
+    
+    private static void write(ByteBuffer target, int offset, CacheEntry entry) {
+        target.putLong(offset + 8, entry.getStamp());
+        target.putFloat(offset + 16, entry.getScore());
+        target.putInt(offset + 20, entry.getEffort());
+        target.putShort(offset + 24, (short) entry.getBestMove());
+        target.put(offset + 26, entry.getBound());
+        target.putInt(offset + 27, entry.getBudgetMillis());
+        target.putLong(offset, entry.getHash());
+    }
+    
+    
+    private ByteBuffer createHeader(int length) {
+        ByteBuffer header = ByteBuffer.allocate(length);
+        header.putInt(MAGIC_OFFSET, magic);
+        header.putInt(VERSION_OFFSET, version);
+        header.putInt(RETIRED_OFFSET, 0);
+        header.putInt(RULE_OFFSET, rule.ordinal());
+        header.putLong(END_OFFSET, headerSize);
+        return header;
+    }
+}
\ No newline at end of file
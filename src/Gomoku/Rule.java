@@ -0,0 +1,176 @@
+/**
+ * @author 潘学海
+ */
+
+package Gomoku;
+
+enum Rule {
+    FREESTYLE, STANDARD, RENJU;
+    
+    
+    public boolean isWinningLength(int length, StoneType type) {
+        return isWinningLength(length, FastBoard.colorOf(type));
+    }
+    
+    
+    public boolean isWinningLength(int length, byte color) {
+        switch (this) {
+            case FREESTYLE:
+                return length >= 5;
+            case RENJU:
+                return (color == FastBoard.BLACK ? length == 5 : length >= 5);
+            default:
+                return length == 5;
+        }
+    }
+    
+    
+    public boolean isWin(FastBoard board, int index) {
+        byte color = board.get(index);
+        for (int direction = 0; direction < 4; ++direction) {
+            if (isWinningLength(board.runLength(index, direction), color))
+                return true;
+        }
+        return false;
+    }
+    
+    
+    public boolean isLastMoveWin(FastBoard board) {
+        return board.getMoveCount() > 0 && isWin(board, board.getLastMove());
+    }
+    
+    
+    public boolean isForbidden(FastBoard board, int index) {
+        return (this == RENJU &&
+                board.getNextColor() == FastBoard.BLACK &&
+                board.isEmpty(index) &&
+                RenjuForbiddenMoves.isForbidden(board, index));
+    }
+}
+
+
+class RenjuForbiddenMoves {
+    private static final int maxDepth = 3;
+    private static final int NO_FOUR = 0;
+    private static final int FOUR = 1;
+    private static final int STRAIGHT_FOUR = 2;
+    private static final int DOUBLE_FOUR = 3;
+    
+    
+    private RenjuForbiddenMoves() {
+    }
+    
+    
+    public static boolean isForbidden(FastBoard board, int index) {
+        return isForbidden(board, index, 0);
+    }
+    
+    
+    private static boolean isForbidden(FastBoard board, int index, int depth) {
+        if (!mayBeForbidden(board, index))
+            return false;
+        board.set(index, FastBoard.BLACK);
+        try {
+            boolean overline = false;
+            for (int direction = 0; direction < 4; ++direction) {
+                int length = board.runLength(index, direction);
+                if (length == 5)
+                    return false;
+                if (length > 5)
+                    overline = true;
+            }
+            if (overline)
+                return true;
+            int fours = 0;
+            int threes = 0;
+            for (int direction = 0; direction < 4; ++direction) {
+                int shape = fourShape(board, index, direction);
+                if (shape == DOUBLE_FOUR)
+                    fours += 2;
+                else if (shape != NO_FOUR)
+                    ++fours;
+                else if (depth < maxDepth && isOpenThree(board, index, direction, depth))
+                    ++threes;
+            }
+            return (fours >= 2 || threes >= 2);
+        }
+        finally {
+            board.set(index, FastBoard.SPACE);
+        }
+    }
+    
+    
+    private static boolean mayBeForbidden(FastBoard board, int index) {
+        int crowdedDirections = 0;
+        for (int direction = 0; direction < 4; ++direction) {
+            int step = FastBoard.directions[direction];
+            int stones = 0;
+            for (int sign = -1; sign <= 1; sign += 2) {
+                for (int k = 1, cell = index + sign * step; k <= 5; ++k, cell += sign * step) {
+                    byte color = board.get(cell);
+                    if (color == FastBoard.WALL)
+                        break;
+                    if (color == FastBoard.BLACK)
+                        ++stones;
+                }
+            }
+            if (stones >= 4)
+                return true;
+            if (stones >= 2)
+                ++crowdedDirections;
+        }
+        return crowdedDirections >= 2;
+    }
+    
+    
+    private static int fourShape(FastBoard board, int index, int direction) {
+        int step = FastBoard.directions[direction];
+        int count = 0, firstK = 0, secondK = 0;
+        for (int sign = -1; sign <= 1; sign += 2) {
+            for (int k = 1, cell = index + sign * step; k <= 4; ++k, cell += sign * step) {
+                byte color = board.get(cell);
+                if (color == FastBoard.WALL || color == FastBoard.WHITE)
+                    break;
+                if (color == FastBoard.SPACE && isFivePoint(board, index, cell, direction)) {
+                    if (count++ == 0)
+                        firstK = sign * k;
+                    else
+                        secondK = sign * k;
+                }
+            }
+        }
+        if (count == 0)
+            return NO_FOUR;
+        if (count == 1)
+            return FOUR;
+        return (Math.abs(firstK - secondK) == 5 ? STRAIGHT_FOUR : DOUBLE_FOUR);
+    }
+    
+    
+    private static boolean isFivePoint(FastBoard board, int index, int cell, int direction) {
+        board.set(cell, FastBoard.BLACK);
+        boolean five = (board.runLength(index, direction) == 5);
+        board.set(cell, FastBoard.SPACE);
+        return five;
+    }
+    
+    
+    private static boolean isOpenThree(FastBoard board, int index, int direction, int depth) {
+        int step = FastBoard.directions[direction];
+        for (int sign = -1; sign <= 1; sign += 2) {
+            for (int k = 1, cell = index + sign * step; k <= 4; ++k, cell += sign * step) {
+                byte color = board.get(cell);
+                if (color == FastBoard.WALL || color == FastBoard.WHITE)
+                    break;
+                if (color != FastBoard.SPACE)
+                    continue;
+                board.set(cell, FastBoard.BLACK);
+                boolean straightFour = (fourShape(board, index, direction) == STRAIGHT_FOUR);
+                board.set(cell, FastBoard.SPACE);
+                if (straightFour && !isForbidden(board, cell, depth + 1))
+                    return true;
+            }
+        }
+        return false;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,223 @@
+/**
+ * @author 潘学海
+ */
+
+package Gomoku;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+interface SpectatorListener {
+    void onSnapshot(BoardSnapshot snapshot);
+    
+    
+    void onMove(int type, int i, int j, int historySize);
+}
+
+
+class SpectatorFeed {
+    private final Board board;
+    private final int capacity;
+    private final int mask;
+    private final AtomicLongArray versions;
+    private final AtomicLongArray payloads;
+    private final List<Spectator> spectators;
+    private final ConcurrentLinkedQueue<Spectator> waiters;
+    private volatile long claimed;
+    private volatile long published;
+    
+    public static final int PUT = 1;
+    public static final int RETRACT = 2;
+    public static final int RESET = 3;
+    
+    
+    public SpectatorFeed(Board board, int capacity) {
+        if (Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("capacity must be a power of two");
+        this.board = board;
+        this.capacity = capacity;
+        mask = capacity - 1;
+        versions = new AtomicLongArray(capacity);
+        payloads = new AtomicLongArray(capacity);
+        spectators = new CopyOnWriteArrayList<Spectator>();
+        waiters = new ConcurrentLinkedQueue<Spectator>();
+        claimed = 0;
+        published = 0;
+        board.addHistorySizeChangeListener((oldSize, newSize) -> {
+            if (newSize == oldSize + 1) {
+                Stone stone = board.getLastStone();
+                publish(PUT, stone.getI(), stone.getJ(), newSize);
+            }
+            else if (newSize == oldSize - 1)
+                publish(RETRACT, 0, 0, newSize);
+            else
+                publish(RESET, 0, 0, newSize);
+        });
+    }
+    
+    
+    private void publish(int type, int i, int j, int historySize) {
+        long sequence = published;
+        int slot = (int) (sequence & mask);
+        claimed = sequence + 1;
+        versions.set(slot, board.snapshot().getVersion());
+        payloads.set(slot, ((long) historySize << 24) | (type << 16) | (i << 8) | j);
+        published = sequence + 1;
+        if (!waiters.isEmpty())
+            wakeNext();
+    }
+    
+    
+    private void wakeNext() {
+        Spectator next;
+        while ((next = waiters.poll()) != null) {
+            next.queued.set(false);
+            if (next.waiting && !next.closed) {
+                LockSupport.unpark(next.waiter);
+                return;
+            }
+        }
+    }
+    
+    
+    public Spectator subscribe(SpectatorListener listener) {
+        Spectator spectator = new Spectator(listener);
+        spectators.add(spectator);
+        return spectator;
+    }
+    
+    
+    public List<Spectator> getSlowSpectators() {
+        List<Spectator> slowSpectators = new ArrayList<Spectator>();
+        for (Spectator spectator : spectators) {
+            if (spectator.isSlow())
+                slowSpectators.add(spectator);
+        }
+        return slowSpectators;
+    }
+    
+    
+    public int getSpectatorNumber() {
+        return spectators.size();
+    }
+    
+    
+    public long getPublished() {
+        return published;
+    }
+    
+    
+    class Spectator implements AutoCloseable {
+        private final SpectatorListener listener;
+        private final AtomicBoolean queued;
+        private volatile Thread waiter;
+        private volatile boolean waiting;
+        private volatile boolean closed;
+        private volatile long cursor;
+        private long baseVersion;
+        private int resyncNumber;
+        private boolean needsSnapshot;
+        
+        
+        private Spectator(SpectatorListener listener) {
+            this.listener = listener;
+            queued = new AtomicBoolean(false);
+            waiting = false;
+            closed = false;
+            resyncNumber = -1;
+            needsSnapshot = true;
+        }
+        
+        
+        public int poll(int maxEvents) {
+            if (needsSnapshot)
+                resynchronize();
+            int delivered = 0;
+            while (delivered < maxEvents && cursor < published) {
+                int slot = (int) (cursor & mask);
+                long version = versions.get(slot);
+                long payload = payloads.get(slot);
+                if (claimed - capacity > cursor) {
+                    resynchronize();
+                    continue;
+                }
+                ++cursor;
+                int type = (int) (payload >>> 16) & 0xFF;
+                if (type == RESET) {
+                    resynchronize();
+                    continue;
+                }
+                if (version <= baseVersion)
+                    continue;
+                listener.onMove(type, (int) (payload >>> 8) & 0xFF, (int) payload & 0xFF, (int) (payload >>> 24));
+                ++delivered;
+            }
+            return delivered;
+        }
+        
+        
+        public int await(int maxEvents, long timeoutNanos) {
+            long deadline = System.nanoTime() + timeoutNanos;
+            int delivered;
+            waiter = Thread.currentThread();
+            waiting = true;
+            try {
+                while ((delivered = poll(maxEvents)) == 0) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0)
+                        break;
+                    if (queued.compareAndSet(false, true))
+                        waiters.add(this);
+                    if (cursor >= published && !needsSnapshot)
+                        LockSupport.parkNanos(this, remaining);
+                    if (!queued.get()) {
+                        wakeNext();
+                        wakeNext();
+                    }
+                }
+            }
+            finally {
+                waiting = false;
+            }
+            return delivered;
+        }
+        
+        
+        private void resynchronize() {
+            long start = published;
+            BoardSnapshot snapshot = board.snapshot();
+            cursor = start;
+            baseVersion = snapshot.getVersion();
+            needsSnapshot = false;
+            ++resyncNumber;
+            listener.onSnapshot(snapshot);
+        }
+        
+        
+        public long getLag() {
+            return published - cursor;
+        }
+        
+        
+        public boolean isSlow() {
+            return getLag() > capacity / 2;
+        }
+        
+        
+        public int getResyncNumber() {
+            return Math.max(0, resyncNumber);
+        }
+        
+        
+        @Override
+        public void close() {
+            closed = true;
+            spectators.remove(this);
+        }
+    }
+}
\ No newline at end of file
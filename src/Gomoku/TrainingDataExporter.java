@@ -0,0 +1,242 @@
+/**
+ * @author 潘学海
+ */
+
+package Gomoku;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+class TrainingDataExporter {
+    private final File outputDirectory;
+    private final int threadNumber;
+    private final int recordsPerShard;
+    private final boolean compressed;
+    private final boolean augmented;
+    private final Rule rule;
+    private final AtomicLong gameNumber;
+    private final AtomicLong recordNumber;
+    
+    public static final int cellNumber = Board.n * Board.n;
+    public static final int planeSize = (cellNumber + 7) / 8;
+    public static final int recordSize = 2 * planeSize + 3;
+    public static final int RESULT_UNKNOWN = 0;
+    public static final int RESULT_BLACK = FastBoard.BLACK;
+    public static final int RESULT_WHITE = FastBoard.WHITE;
+    public static final int RESULT_DRAW = 3;
+    private static final int[][] symmetries = createSymmetries();
+    
+    
+    public TrainingDataExporter(File outputDirectory, int threadNumber, int recordsPerShard, boolean compressed, boolean augmented, Rule rule) {
+        this.outputDirectory = outputDirectory;
+        this.threadNumber = threadNumber;
+        this.recordsPerShard = recordsPerShard;
+        this.compressed = compressed;
+        this.augmented = augmented;
+        this.rule = rule;
+        gameNumber = new AtomicLong();
+        recordNumber = new AtomicLong();
+    }
+    
+    
+    public long export(List<File> games) throws IOException, InterruptedException {
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs())
+            throw new IOException("cannot create " + outputDirectory);
+        AtomicInteger next = new AtomicInteger();
+        List<Throwable> failures = new ArrayList<Throwable>();
+        Thread[] workers = new Thread[threadNumber];
+        for (int k = 0; k < threadNumber; ++k) {
+            int worker = k;
+            workers[k] = new Thread(() -> {
+                try (ShardWriter writer = new ShardWriter(worker)) {
+                    byte[][] planes = new byte[symmetries.length][2 * planeSize];
+                    byte[] record = new byte[recordSize];
+                    for (int index = next.getAndIncrement(); index < games.size(); index = next.getAndIncrement())
+                        exportGame(games.get(index), writer, planes, record);
+                }
+                catch (IOException | RuntimeException | Error e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            }, "exporter-" + k);
+            workers[k].start();
+        }
+        for (Thread worker : workers)
+            worker.join();
+        if (!failures.isEmpty()) {
+            Throwable failure = failures.get(0);
+            if (failure instanceof IOException)
+                throw (IOException) failure;
+            if (failure instanceof Error)
+                throw (Error) failure;
+            throw (RuntimeException) failure;
+        }
+        return recordNumber.get();
+    }
+    
+    
+    private void exportGame(File file, ShardWriter writer, byte[][] planes, byte[] record) throws IOException {
+        Board board = new Board();
+        board.setRule(rule);
+        try {
+            board.loadGame(file);
+        }
+        catch (IOException | BadInputStoneException e) {
+            System.err.println("skipping " + file + ": " + e.getClass().getSimpleName());
+            return;
+        }
+        FastBoard position = new FastBoard(board);
+        int result = getResult(position);
+        int symmetryNumber = (augmented ? symmetries.length : 1);
+        for (int s = 0; s < symmetryNumber; ++s)
+            Arrays.fill(planes[s], (byte) 0);
+        for (int ply = 0; ply < position.getMoveCount(); ++ply) {
+            int cell = toCell(position.getMove(ply));
+            int color = (ply % 2 == 0 ? FastBoard.BLACK : FastBoard.WHITE);
+            for (int s = 0; s < symmetryNumber; ++s) {
+                int transformed = symmetries[s][cell];
+                System.arraycopy(planes[s], 0, record, 0, 2 * planeSize);
+                record[2 * planeSize] = (byte) color;
+                record[2 * planeSize + 1] = (byte) transformed;
+                record[2 * planeSize + 2] = (byte) result;
+                writer.write(record);
+                int offset = (color == FastBoard.BLACK ? 0 : planeSize);
+                planes[s][offset + transformed / 8] |= (byte) (1 << (transformed % 8));
+            }
+        }
+        recordNumber.addAndGet((long) symmetryNumber * position.getMoveCount());
+        gameNumber.incrementAndGet();
+    }
+    
+    
+    private int getResult(FastBoard position) {
+        if (rule.isLastMoveWin(position))
+            return (position.get(position.getLastMove()) == FastBoard.BLACK ? RESULT_BLACK : RESULT_WHITE);
+        if (position.isFull())
+            return RESULT_DRAW;
+        return RESULT_UNKNOWN;
+    }
+    
+    
+    private static int toCell(int index) {
+        return (FastBoard.getI(index) - 1) * Board.n + (FastBoard.getJ(index) - 1);
+    }
+    
+    
+    private static int[][] createSymmetries() {
+        int[][] maps = new int[8][cellNumber];
+        int last = Board.n - 1;
+        for (int i = 0; i < Board.n; ++i) {
+            for (int j = 0; j < Board.n; ++j) {
+                int[][] images = {{i, j}, {j, last - i}, {last - i, last - j}, {last - j, i},
+                                  {i, last - j}, {last - i, j}, {j, i}, {last - j, last - i}};
+                for (int s = 0; s < 8; ++s)
+                    maps[s][i * Board.n + j] = images[s][0] * Board.n + images[s][1];
+            }
+        }
+        return maps;
+    }
+    
+    
+    private class ShardWriter implements AutoCloseable {
+        private final int worker;
+        private int shardNumber;
+        private int shardRecords;
+        private OutputStream stream;
+        
+        
+        ShardWriter(int worker) {
+            this.worker = worker;
+            shardNumber = 0;
+            shardRecords = 0;
+            stream = null;
+        }
+        
+        
+        void write(byte[] record) throws IOException {
+            if (stream == null || shardRecords == recordsPerShard)
+                rotate();
+            stream.write(record);
+            ++shardRecords;
+        }
+        
+        
+        private void rotate() throws IOException {
+            close();
+            String name = String.format(Locale.ROOT, "shard-%02d-%05d.bin%s", worker, shardNumber++, (compressed ? ".gz" : ""));
+            OutputStream file = new FileOutputStream(new File(outputDirectory, name));
+            stream = (compressed ? new GZIPOutputStream(file, 1 << 16) : new BufferedOutputStream(file, 1 << 16));
+            shardRecords = 0;
+        }
+        
+        
+        @Override
+        public void close() throws IOException {
+            if (stream != null) {
+                stream.close();
+                stream = null;
+            }
+        }
+    }
+    
+    
+    public static void main(String[] args) throws IOException, InterruptedException {
+        File outputDirectory = new File("training");
+        int threadNumber = Runtime.getRuntime().availableProcessors();
+        int recordsPerShard = 1 << 20;
+        boolean compressed = true;
+        boolean augmented = false;
+        Rule rule = Rule.STANDARD;
+        List<File> inputs = new ArrayList<File>();
+        for (int k = 0; k < args.length; ++k) {
+            switch (args[k]) {
+                case "-output":
+                    outputDirectory = new File(args[++k]);
+                    break;
+                case "-threads":
+                    threadNumber = Integer.parseInt(args[++k]);
+                    break;
+                case "-shard-records":
+                    recordsPerShard = Integer.parseInt(args[++k]);
+                    break;
+                case "-raw":
+                    compressed = false;
+                    break;
+                case "-augment":
+                    augmented = true;
+                    break;
+                case "-rule":
+                    rule = Rule.valueOf(args[++k].toUpperCase());
+                    break;
+                default:
+                    inputs.add(new File(args[k]));
+            }
+        }
+        if (inputs.isEmpty()) {
+            System.err.println("usage: TrainingDataExporter [-output dir] [-threads N] [-shard-records N] [-raw] [-augment] [-rule freestyle|standard|renju] game...");
+            System.err.println("the result byte is read from the final position: 1 black wins, 2 white wins, 3 draw (full board), 0 unknown.");
+            System.err.println("games saved from the GUI never end in a decided position, so their result is always 0.");
+            System.exit(1);
+        }
+        List<File> games = new ArrayList<File>();
+        for (File input : inputs)
+            games.addAll(BatchAnalyzer.listPositions(input));
+        long startTime = System.nanoTime();
+        TrainingDataExporter exporter = new TrainingDataExporter(outputDirectory, threadNumber, recordsPerShard, compressed, augmented, rule);
+        long records = exporter.export(games);
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        System.err.printf(Locale.ROOT, "exported %d records of %d bytes from %d games in %.1f s (%.0f records/min)%n",
+                          records, recordSize, exporter.gameNumber.get(), seconds, records / seconds * 60);
+    }
+}
\ No newline at end of file
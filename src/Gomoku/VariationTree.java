@@ -0,0 +1,363 @@
+/**
+ * @author 潘学海
+ */
+
+package Gomoku;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+interface VariationListener {
+    void retract(int move);
+    
+    
+    void put(int move);
+}
+
+
+class VariationTree {
+    private int[] parent;
+    private int[] firstChild;
+    private int[] nextSibling;
+    private short[] move;
+    private short[] depth;
+    private int nodeNumber;
+    private int current;
+    private int[] path;
+    private final Map<Integer, String> comments;
+    
+    public static final int root = 0;
+    public static final int NONE = -1;
+    private static final int magic = 0x474D4B54;
+    private static final int version = 1;
+    
+    
+    public VariationTree() {
+        parent = new int[64];
+        firstChild = new int[64];
+        nextSibling = new int[64];
+        move = new short[64];
+        depth = new short[64];
+        path = new int[Board.n * Board.n];
+        comments = new HashMap<Integer, String>();
+        clear();
+    }
+    
+    
+    public static VariationTree fromBoard(Board board) {
+        VariationTree tree = new VariationTree();
+        tree.follow(board);
+        return tree;
+    }
+    
+    
+    public void clear() {
+        nodeNumber = 1;
+        parent[root] = NONE;
+        firstChild[root] = NONE;
+        nextSibling[root] = NONE;
+        move[root] = -1;
+        depth[root] = 0;
+        current = root;
+        comments.clear();
+    }
+    
+    
+    public int follow(Board board) {
+        int node = root;
+        try {
+            for (Stone stone : board.getHistory())
+                node = addMove(node, FastBoard.indexOf(stone.getI(), stone.getJ()));
+        }
+        catch (BadInputStoneException e) {
+            throw new IllegalStateException(e);
+        }
+        current = node;
+        return node;
+    }
+    
+    
+    public int addMove(int node, int newMove) throws StoneOutOfBoardRangeException, StoneAlreadyPlacedException {
+        int child = findChild(node, newMove);
+        if (child != NONE)
+            return child;
+        int i = FastBoard.getI(newMove), j = FastBoard.getJ(newMove);
+        if (newMove < 0 || i < 1 || i > Board.n || j < 1 || j > Board.n)
+            throw new StoneOutOfBoardRangeException();
+        for (int ancestor = node; ancestor != root; ancestor = parent[ancestor]) {
+            if (move[ancestor] == newMove)
+                throw new StoneAlreadyPlacedException();
+        }
+        if (nodeNumber == parent.length)
+            grow();
+        child = nodeNumber++;
+        parent[child] = node;
+        firstChild[child] = NONE;
+        nextSibling[child] = NONE;
+        move[child] = (short) newMove;
+        depth[child] = (short) (depth[node] + 1);
+        if (firstChild[node] == NONE)
+            firstChild[node] = child;
+        else {
+            int last = firstChild[node];
+            while (nextSibling[last] != NONE)
+                last = nextSibling[last];
+            nextSibling[last] = child;
+        }
+        return child;
+    }
+    
+    
+    public int findChild(int node, int childMove) {
+        for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+            if (move[child] == childMove)
+                return child;
+        }
+        return NONE;
+    }
+    
+    
+    public int commonAncestor(int a, int b) {
+        while (depth[a] > depth[b])
+            a = parent[a];
+        while (depth[b] > depth[a])
+            b = parent[b];
+        while (a != b) {
+            a = parent[a];
+            b = parent[b];
+        }
+        return a;
+    }
+    
+    
+    public void jump(int target, VariationListener listener) {
+        int ancestor = commonAncestor(current, target);
+        for (int node = current; node != ancestor; node = parent[node])
+            listener.retract(move[node]);
+        int length = 0;
+        for (int node = target; node != ancestor; node = parent[node])
+            path[length++] = move[node];
+        while (length > 0)
+            listener.put(path[--length]);
+        current = target;
+    }
+    
+    
+    public void jump(int target, FastBoard board) {
+        jump(target, new VariationListener() {
+            @Override
+            public void retract(int move) {
+                board.undo();
+            }
+            
+            
+            @Override
+            public void put(int move) {
+                board.put(move);
+            }
+        });
+    }
+    
+    
+    public void jump(int target, Board board) {
+        jump(target, board, null);
+    }
+    
+    
+    public void jump(int target, Board board, VariationListener listener) {
+        int length = depth[target];
+        for (int node = target; node != root; node = parent[node])
+            path[depth[node] - 1] = move[node];
+        List<Stone> history = board.getHistory();
+        int common = 0;
+        while (common < length && common < history.size() && FastBoard.indexOf(history.get(common).getI(), history.get(common).getJ()) == path[common])
+            ++common;
+        while (history.size() > common) {
+            Stone stone = board.popStone();
+            if (listener != null)
+                listener.retract(FastBoard.indexOf(stone.getI(), stone.getJ()));
+        }
+        for (int k = common; k < length; ++k) {
+            try {
+                board.pushStone(new Stone(FastBoard.getI(path[k]), FastBoard.getJ(path[k]), board.getNextStoneType()));
+            }
+            catch (StoneOutOfBoardRangeException e) {
+                throw new IllegalStateException(e);
+            }
+            if (listener != null)
+                listener.put(path[k]);
+        }
+        current = target;
+        board.refreshGameState();
+    }
+    
+    
+    public int play(int newMove, VariationListener listener) throws StoneOutOfBoardRangeException, StoneAlreadyPlacedException {
+        int child = addMove(current, newMove);
+        jump(child, listener);
+        return child;
+    }
+    
+    
+    public int getCurrent() {
+        return current;
+    }
+    
+    
+    public int getNodeNumber() {
+        return nodeNumber;
+    }
+    
+    
+    public int getParent(int node) {
+        return parent[node];
+    }
+    
+    
+    public int getFirstChild(int node) {
+        return firstChild[node];
+    }
+    
+    
+    public int getNextSibling(int node) {
+        return nextSibling[node];
+    }
+    
+    
+    public int getMove(int node) {
+        return move[node];
+    }
+    
+    
+    public int getDepth(int node) {
+        return depth[node];
+    }
+    
+    
+    public String getComment(int node) {
+        return comments.get(node);
+    }
+    
+    
+    public void setComment(int node, String comment) {
+        if (comment == null || comment.isEmpty())
+            comments.remove(node);
+        else
+            comments.put(node, comment);
+    }
+    
+    
+    public void save(File file) throws IOException {
+        try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            outputStream.writeInt(magic);
+            outputStream.writeShort(version);
+            outputStream.writeInt(nodeNumber);
+            int[] order = new int[nodeNumber];
+            int[] stack = new int[nodeNumber];
+            int top = 0, count = 0;
+            stack[top++] = root;
+            while (top > 0) {
+                int node = stack[--top];
+                order[node] = count++;
+                int childNumber = 0;
+                for (int child = firstChild[node]; child != NONE; child = nextSibling[child])
+                    ++childNumber;
+                if (node != root)
+                    outputStream.writeByte(toCell(move[node]));
+                outputStream.writeByte(childNumber);
+                int base = top + childNumber;
+                for (int child = firstChild[node]; child != NONE; child = nextSibling[child])
+                    stack[--base] = child;
+                top += childNumber;
+            }
+            outputStream.writeInt(comments.size());
+            for (Map.Entry<Integer, String> comment : comments.entrySet()) {
+                outputStream.writeInt(order[comment.getKey()]);
+                outputStream.writeUTF(comment.getValue());
+            }
+            outputStream.writeInt(order[current]);
+        }
+    }
+    
+    
+    public void load(File file) throws IOException {
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (inputStream.readInt() != magic || inputStream.readShort() != version)
+                throw new IOException(file + " is not a variation tree");
+            int number = inputStream.readInt();
+            if (number < 1 || number > Board.n * Board.n * Board.n * Board.n)
+                throw new IOException(file + " is corrupted");
+            clear();
+            int[] pending = new int[number];
+            int[] stack = new int[number];
+            int top = 0;
+            pending[root] = inputStream.readUnsignedByte();
+            stack[top++] = root;
+            while (top > 0) {
+                int node = stack[top - 1];
+                if (pending[node] == 0) {
+                    --top;
+                    continue;
+                }
+                --pending[node];
+                int cell = inputStream.readUnsignedByte();
+                if (cell >= Board.n * Board.n || nodeNumber == number)
+                    throw new IOException(file + " is corrupted");
+                int child;
+                try {
+                    child = addMove(node, fromCell(cell));
+                }
+                catch (BadInputStoneException e) {
+                    throw new IOException(file + " is corrupted");
+                }
+                pending[child] = inputStream.readUnsignedByte();
+                stack[top++] = child;
+            }
+            int commentNumber = inputStream.readInt();
+            for (int k = 0; k < commentNumber; ++k) {
+                int node = inputStream.readInt();
+                String comment = inputStream.readUTF();
+                if (node < 0 || node >= nodeNumber)
+                    throw new IOException(file + " is corrupted");
+                setComment(node, comment);
+            }
+            current = inputStream.readInt();
+            if (current < 0 || current >= nodeNumber)
+                throw new IOException(file + " is corrupted");
+        }
+        catch (IOException e) {
+            clear();
+            throw e;
+        }
+    }
+    
+    
+    private void grow() {
+        int capacity = 2 * parent.length;
+        parent = Arrays.copyOf(parent, capacity);
+        firstChild = Arrays.copyOf(firstChild, capacity);
+        nextSibling = Arrays.copyOf(nextSibling, capacity);
+        move = Arrays.copyOf(move, capacity);
+        depth = Arrays.copyOf(depth, capacity);
+    }
+    
+    
+    private static int toCell(int index) {
+        return (FastBoard.getI(index) - 1) * Board.n + FastBoard.getJ(index) - 1;
+    }
+    
+    
+    private static int fromCell(int cell) {
+        return FastBoard.indexOf(cell / Board.n + 1, cell % Board.n + 1);
+    }
+}
\ No newline at end of file